@@ -0,0 +1,79 @@
+package com.scucos.maven.Reducer.Benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.scucos.maven.Reducer.ImmutableSlice;
+
+/**
+ * The ImmutableSlice counterparts of SliceBenchmarks, on the same fixtures.
+ * `equal` is a separate copy of `slice`, so equals compares every collection.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ImmutableSliceBenchmarks {
+
+	@Param({ "2", "4", "8" })
+	int categories;
+
+	@Param({ "1", "16", "128" })
+	int size;
+
+	ImmutableSlice<Object> slice;
+	ImmutableSlice<Object> equal;
+	ImmutableSlice<Object> contained;
+	ImmutableSlice<Object> disjoint;
+
+	@Setup
+	public void setup() {
+		slice = ImmutableSlice.of(SliceFixtures.slice(categories, 0, size));
+		equal = ImmutableSlice.of(SliceFixtures.slice(categories, 0, size));
+		contained = ImmutableSlice.of(SliceFixtures.slice(categories, 0, Math.max(1, size / 2)));
+		disjoint = ImmutableSlice.of(SliceFixtures.slice(categories, size, size));
+	}
+
+	@Benchmark
+	public long volume() {
+		return slice.volume();
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return slice.compareTo(contained);
+	}
+
+	@Benchmark
+	public int hashCode_() {
+		return slice.hashCode();
+	}
+
+	@Benchmark
+	public boolean equals_() {
+		return slice.equals(equal);
+	}
+
+	@Benchmark
+	public boolean containedIn() {
+		return contained.containedIn(slice);
+	}
+
+	@Benchmark
+	public ImmutableSlice<Object> union() {
+		return slice.union("c0", disjoint);
+	}
+}
@@ -0,0 +1,95 @@
+package com.scucos.maven.Reducer.Benchmarks;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Per-operation cost of the Slice primitives the reducers are built from.
+ *
+ * Every benchmark runs against slices with `categories` categories of `size` values each.
+ * `contained` holds the lower half of `slice`'s values in every category, so containedIn and
+ * asymetricDifference have to check every category, and `disjoint` holds none of them.
+ * Sizes stop at 128 because volume() overflows a long past 128^8.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SliceBenchmarks {
+
+	@Param({ "2", "4", "8" })
+	int categories;
+
+	@Param({ "1", "16", "128" })
+	int size;
+
+	Slice<Object> slice;
+	Slice<Object> contained;
+	Slice<Object> disjoint;
+	Object t;
+
+	@Setup
+	public void setup() {
+		slice = SliceFixtures.slice(categories, 0, size);
+		contained = SliceFixtures.slice(categories, 0, Math.max(1, size / 2));
+		disjoint = SliceFixtures.slice(categories, size, size);
+		t = slice.toType();
+	}
+
+	@Benchmark
+	public long volume() {
+		return slice.volume();
+	}
+
+	@Benchmark
+	public int compareTo() {
+		return slice.compareTo(contained);
+	}
+
+	@Benchmark
+	public boolean containedIn() {
+		return contained.containedIn(slice);
+	}
+
+	@Benchmark
+	public List<Object> asymetricDifference() {
+		return contained.asymetricDifference(slice);
+	}
+
+	/**
+	 * Unions one category of a copy, the way the reducers do it: detach the shared collection, then add to it
+	 */
+	@Benchmark
+	public Slice<Object> unionAdd() {
+		Slice<Object> union = slice.copy();
+		union.detachEntry("c0");
+		union.unionAdd("c0", disjoint);
+		return union;
+	}
+
+	@Benchmark
+	public Slice<Object> newSlice() {
+		return new Slice<Object>(t);
+	}
+
+	@Benchmark
+	public Object toType() {
+		return slice.toType();
+	}
+}
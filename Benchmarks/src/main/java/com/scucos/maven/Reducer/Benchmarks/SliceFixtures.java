@@ -0,0 +1,59 @@
+package com.scucos.maven.Reducer.Benchmarks;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Types with 2, 4 and 8 collection fields, and slices of them with a given number of values per category
+ */
+public class SliceFixtures {
+
+	public static class Two {
+		Set<Integer> c0, c1;
+
+		public Two() {}
+	}
+
+	public static class Four {
+		Set<Integer> c0, c1, c2, c3;
+
+		public Four() {}
+	}
+
+	public static class Eight {
+		Set<Integer> c0, c1, c2, c3, c4, c5, c6, c7;
+
+		public Eight() {}
+	}
+
+	public static Class<?> typeWithCategories(int categories) {
+		switch(categories) {
+			case 2: return Two.class;
+			case 4: return Four.class;
+			case 8: return Eight.class;
+			default: throw new IllegalArgumentException("No fixture type with " + categories + " categories");
+		}
+	}
+
+	/**
+	 * Creates a slice holding the values [from, from + size) in every category
+	 * @param categories
+	 * @param from
+	 * @param size
+	 * @return
+	 */
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	public static Slice<Object> slice(int categories, int from, int size) {
+		Slice<Object> slice = new Slice(typeWithCategories(categories));
+		for(int c = 0; c < categories; c++) {
+			Set<Integer> values = new HashSet<>();
+			for(int v = from; v < from + size; v++) {
+				values.add(v);
+			}
+			slice.addEntry("c" + c, values);
+		}
+		return slice;
+	}
+}
@@ -0,0 +1,309 @@
+package com.scucos.maven.Reducer;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A Set<Object> that stores the ids a ValueDictionary assigned to its values as a bitmap.
+ *
+ * The bitmap only spans the words between the lowest and highest id it holds, so a point-slice
+ * with a single value costs one word no matter how large the dictionary grows, while wide slices
+ * late in a reduction become dense runs of words.
+ *
+ * When both sides of containsAll, addAll or equals are BitmapSets over the same dictionary,
+ * the operation is done one 64 bit word at a time instead of value by value. Mixing a BitmapSet
+ * with any other Collection still works, it just falls back to the regular Set behaviour.
+ *
+ * The set keeps a running sum of its values hash codes so hashCode() is O(1) and agrees with
+ * every other Set implementation holding the same values.
+ */
+public class BitmapSet extends AbstractSet<Object> {
+
+	private static final long[] EMPTY = new long[0];
+
+	private final ValueDictionary dictionary;
+
+	// words[i] holds the ids in [64 * (offset + i), 64 * (offset + i + 1))
+	private long[] words = EMPTY;
+	private int offset = 0;
+
+	private int size = 0;
+	private int hash = 0;
+
+	private int modCount = 0;
+
+	public BitmapSet(ValueDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	public BitmapSet(BitmapSet other) {
+		this.dictionary = other.dictionary;
+		this.words = other.words.clone();
+		this.offset = other.offset;
+		this.size = other.size;
+		this.hash = other.hash;
+	}
+
+	public ValueDictionary getDictionary() {
+		return dictionary;
+	}
+
+	// Set operations
+
+	@Override
+	public int size() {
+		return size;
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		int id = dictionary.idOf(o);
+		return id >= 0 && get(id);
+	}
+
+	@Override
+	public boolean add(Object o) {
+		int id = dictionary.intern(o);
+		if(get(id)) {
+			return false;
+		}
+
+		int index = ensureWord(id >>> 6);
+		words[index] |= 1L << id;
+		size += 1;
+		hash += hashOf(id);
+		modCount += 1;
+		return true;
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		int id = dictionary.idOf(o);
+		if(id < 0 || !get(id)) {
+			return false;
+		}
+
+		clear(id);
+		return true;
+	}
+
+	@Override
+	public void clear() {
+		words = EMPTY;
+		offset = 0;
+		size = 0;
+		hash = 0;
+		modCount += 1;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if(!sharesDictionary(c)) {
+			return super.containsAll(c);
+		}
+
+		BitmapSet other = (BitmapSet) c;
+		if(other.size > size) {
+			return false;
+		}
+
+		long[] otherWords = other.words;
+		for(int i = 0; i < otherWords.length; i++) {
+			if((otherWords[i] & ~word(other.offset + i)) != 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Object> c) {
+		if(!sharesDictionary(c)) {
+			return super.addAll(c);
+		}
+
+		BitmapSet other = (BitmapSet) c;
+		if(other.size == 0 || other == this) {
+			return false;
+		}
+
+		ensureWord(other.offset);
+		ensureWord(other.offset + other.words.length - 1);
+
+		boolean changed = false;
+		long[] otherWords = other.words;
+		for(int i = 0; i < otherWords.length; i++) {
+			int index = other.offset + i - offset;
+			long added = otherWords[i] & ~words[index];
+			if(added == 0) {
+				continue;
+			}
+
+			words[index] |= added;
+			size += Long.bitCount(added);
+			changed = true;
+
+			int base = (other.offset + i) << 6;
+			while(added != 0) {
+				hash += hashOf(base + Long.numberOfTrailingZeros(added));
+				added &= added - 1;
+			}
+		}
+
+		if(changed) {
+			modCount += 1;
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(o == this) {
+			return true;
+		}
+		if(!(o instanceof BitmapSet) || !sharesDictionary((BitmapSet) o)) {
+			return super.equals(o);
+		}
+
+		BitmapSet other = (BitmapSet) o;
+		if(other.size != size || other.hash != hash) {
+			return false;
+		}
+
+		for(int i = 0; i < words.length; i++) {
+			if(words[i] != other.word(offset + i)) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new Iterator<Object>() {
+			int next = nextId(0);
+			int last = -1;
+			int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return next >= 0;
+			}
+
+			@Override
+			public Object next() {
+				if(next < 0) {
+					throw new NoSuchElementException();
+				}
+				if(modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+
+				last = next;
+				next = nextId(next + 1);
+				return dictionary.valueOf(last);
+			}
+
+			@Override
+			public void remove() {
+				if(last < 0) {
+					throw new IllegalStateException();
+				}
+				if(modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+
+				BitmapSet.this.clear(last);
+				expectedModCount = modCount;
+				last = -1;
+			}
+		};
+	}
+
+	// Bitmap operations
+
+	/**
+	 * Returns the smallest id held by this set that is >= from, or -1 if there is none
+	 * @param from
+	 * @return
+	 */
+	public int nextId(int from) {
+		int wordIndex = Math.max(from >> 6, offset) - offset;
+		if(wordIndex >= words.length) {
+			return -1;
+		}
+
+		long word = words[wordIndex];
+		if((from >> 6) - offset == wordIndex) {
+			word &= -1L << from;
+		}
+
+		while(true) {
+			if(word != 0) {
+				return ((wordIndex + offset) << 6) + Long.numberOfTrailingZeros(word);
+			}
+			wordIndex += 1;
+			if(wordIndex == words.length) {
+				return -1;
+			}
+			word = words[wordIndex];
+		}
+	}
+
+	private boolean sharesDictionary(Collection<?> c) {
+		return c instanceof BitmapSet && ((BitmapSet) c).dictionary == dictionary;
+	}
+
+	private long word(int wordIndex) {
+		int index = wordIndex - offset;
+		return (index < 0 || index >= words.length) ? 0 : words[index];
+	}
+
+	private boolean get(int id) {
+		return (word(id >>> 6) & (1L << id)) != 0;
+	}
+
+	private void clear(int id) {
+		words[(id >>> 6) - offset] &= ~(1L << id);
+		size -= 1;
+		hash -= hashOf(id);
+		modCount += 1;
+	}
+
+	private int hashOf(int id) {
+		Object value = dictionary.valueOf(id);
+		return value == null ? 0 : value.hashCode();
+	}
+
+	/**
+	 * Grows the word array so that it covers the given word index and returns its position in the array
+	 */
+	private int ensureWord(int wordIndex) {
+		if(words.length == 0) {
+			words = new long[1];
+			offset = wordIndex;
+			return 0;
+		}
+
+		if(wordIndex < offset) {
+			long[] grown = new long[words.length + offset - wordIndex];
+			System.arraycopy(words, 0, grown, offset - wordIndex, words.length);
+			words = grown;
+			offset = wordIndex;
+		} else if(wordIndex >= offset + words.length) {
+			int needed = wordIndex - offset + 1;
+			words = Arrays.copyOf(words, Math.max(needed, words.length + (words.length >> 1)));
+		}
+
+		return wordIndex - offset;
+	}
+}
@@ -0,0 +1,25 @@
+package com.scucos.maven.Reducer.Codecs;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a Collection field as one of the dimensions (categories) of a Slice.
+ *
+ * Types with at least one @Dimension field get a SliceCodec generated for them at build time
+ * by the SliceCodecProcessor, which Reducer.toSlice / fromSlice then use instead of reflection.
+ * When a type has @Dimension fields, only those fields become categories, otherwise every
+ * declared Collection field does.
+ *
+ * Annotated fields must not be static, and must either be non-private or have a
+ * getX() / setX(...) pair. The declaring type needs a non-private no argument constructor.
+ */
+@Documented
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface Dimension {
+
+}
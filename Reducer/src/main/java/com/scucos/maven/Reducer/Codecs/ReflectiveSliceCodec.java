@@ -0,0 +1,30 @@
+package com.scucos.maven.Reducer.Codecs;
+
+import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.Slice.SliceConstructionException;
+import com.scucos.maven.Reducer.Reducers.ReflectionUtils;
+import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
+
+/**
+ * SliceCodec used for types that do not have a generated codec.
+ * Goes through ReflectionUtils, which looks up the fields and constructor of each class once and caches them.
+ * @param <T>
+ */
+public class ReflectiveSliceCodec<T> implements SliceCodec<T> {
+
+	private final Class<T> tClass;
+
+	public ReflectiveSliceCodec(Class<T> tClass) {
+		this.tClass = tClass;
+	}
+
+	@Override
+	public Slice<T> toSlice(T t) throws SliceConstructionException {
+		return new Slice<T>(t);
+	}
+
+	@Override
+	public T fromSlice(Slice<T> slice) throws ObjectConstructionException {
+		return ReflectionUtils.createObjectWithFields(tClass, slice.getMap());
+	}
+}
@@ -0,0 +1,30 @@
+package com.scucos.maven.Reducer.Codecs;
+
+import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.Slice.SliceConstructionException;
+import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
+
+/**
+ * Converts a T to and from its Slice<T> representation.
+ * Implementations are either generated at build time for types with @Dimension fields,
+ * or fall back to ReflectiveSliceCodec. Use SliceCodecs.forClass to get the right one.
+ * @param <T> the type being converted
+ */
+public interface SliceCodec<T> {
+
+	/**
+	 * Builds a Slice<T> with one category per dimension of t
+	 * @param t
+	 * @return
+	 * @throws SliceConstructionException
+	 */
+	Slice<T> toSlice(T t) throws SliceConstructionException;
+
+	/**
+	 * Builds a new T whose dimensions are set to the slice's categories
+	 * @param slice
+	 * @return
+	 * @throws ObjectConstructionException
+	 */
+	T fromSlice(Slice<T> slice) throws ObjectConstructionException;
+}
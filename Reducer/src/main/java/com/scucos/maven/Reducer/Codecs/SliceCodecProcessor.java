@@ -0,0 +1,244 @@
+package com.scucos.maven.Reducer.Codecs;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+
+/**
+ * Annotation processor that generates a SliceCodec for every type with @Dimension fields.
+ *
+ * The generated codec reads and writes the annotated fields directly (or through their
+ * getX() / setX(...) methods when the fields are private), so converting to and from slices
+ * costs the same as hand written toSlice / fromSlice methods. SliceCodecs finds the generated
+ * class by name at runtime.
+ *
+ * The processor is registered in META-INF/services, so it runs for any project compiling
+ * against this jar without further configuration.
+ */
+@SupportedAnnotationTypes(SliceCodecProcessor.DIMENSION)
+public class SliceCodecProcessor extends AbstractProcessor {
+
+	static final String DIMENSION = "com.scucos.maven.Reducer.Codecs.Dimension";
+
+	/**
+	 * How the generated code reads and writes one dimension
+	 */
+	private static class Accessor {
+		String category;
+		String type;
+		String read;
+		String write;
+	}
+
+	@Override
+	public SourceVersion getSupportedSourceVersion() {
+		return SourceVersion.latestSupported();
+	}
+
+	@Override
+	public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+		Map<TypeElement, List<VariableElement>> dimensionsByType = new LinkedHashMap<>();
+
+		for(TypeElement annotation : annotations) {
+			for(Element element : roundEnv.getElementsAnnotatedWith(annotation)) {
+				if(element.getKind() != ElementKind.FIELD) {
+					continue;
+				}
+				TypeElement type = (TypeElement) element.getEnclosingElement();
+				dimensionsByType.computeIfAbsent(type, t -> new ArrayList<>()).add((VariableElement) element);
+			}
+		}
+
+		for(Map.Entry<TypeElement, List<VariableElement>> entry : dimensionsByType.entrySet()) {
+			generateCodec(entry.getKey(), entry.getValue());
+		}
+
+		return true;
+	}
+
+	private void generateCodec(TypeElement type, List<VariableElement> fields) {
+		if(!validType(type)) {
+			return;
+		}
+
+		List<Accessor> accessors = new ArrayList<>();
+		for(VariableElement field : fields) {
+			Accessor accessor = accessor(type, field);
+			if(accessor == null) {
+				return;
+			}
+			accessors.add(accessor);
+		}
+
+		PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+		String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+		String typeName = type.getQualifiedName().toString();
+		String codecName = codecSimpleName(type);
+
+		StringBuilder source = new StringBuilder();
+		if(!packageName.isEmpty()) {
+			source.append("package ").append(packageName).append(";\n\n");
+		}
+		source.append("import com.scucos.maven.Reducer.Slice;\n");
+		source.append("import com.scucos.maven.Reducer.Codecs.SliceCodec;\n\n");
+		source.append("/**\n * Generated by SliceCodecProcessor from the @Dimension fields of ").append(typeName).append(", do not edit.\n */\n");
+		source.append("public final class ").append(codecName).append(" implements SliceCodec<").append(typeName).append("> {\n\n");
+
+		source.append("\t@Override\n");
+		source.append("\tpublic Slice<").append(typeName).append("> toSlice(").append(typeName).append(" t) {\n");
+		source.append("\t\tSlice<").append(typeName).append("> slice = new Slice<>(").append(typeName).append(".class);\n");
+		for(Accessor accessor : accessors) {
+			source.append("\t\tslice.addEntry(\"").append(accessor.category).append("\", ").append(accessor.read).append(");\n");
+		}
+		source.append("\t\treturn slice;\n");
+		source.append("\t}\n\n");
+
+		source.append("\t@Override\n");
+		source.append("\t@SuppressWarnings(\"unchecked\")\n");
+		source.append("\tpublic ").append(typeName).append(" fromSlice(Slice<").append(typeName).append("> slice) {\n");
+		source.append("\t\t").append(typeName).append(" t = new ").append(typeName).append("();\n");
+		for(Accessor accessor : accessors) {
+			String value = "(" + accessor.type + ") slice.getEntry(\"" + accessor.category + "\")";
+			source.append("\t\t").append(String.format(accessor.write, value)).append(";\n");
+		}
+		source.append("\t\treturn t;\n");
+		source.append("\t}\n");
+		source.append("}\n");
+
+		String qualifiedCodecName = packageName.isEmpty() ? codecName : packageName + "." + codecName;
+		try(Writer writer = processingEnv.getFiler().createSourceFile(qualifiedCodecName, type).openWriter()) {
+			writer.write(source.toString());
+		} catch (IOException e) {
+			error(type, "Unable to write " + qualifiedCodecName + ": " + e.getMessage());
+		}
+	}
+
+	/**
+	 * Checks that the generated code will be able to instantiate the type
+	 */
+	private boolean validType(TypeElement type) {
+		if(type.getKind() != ElementKind.CLASS || type.getModifiers().contains(Modifier.ABSTRACT)) {
+			error(type, "@Dimension fields must be declared in a concrete class");
+			return false;
+		}
+		if(!type.getTypeParameters().isEmpty()) {
+			error(type, "@Dimension fields are not supported on generic classes");
+			return false;
+		}
+		for(Element enclosing = type; enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+			TypeElement enclosingType = (TypeElement) enclosing;
+			if(enclosingType.getModifiers().contains(Modifier.PRIVATE)) {
+				error(type, "@Dimension fields can not be declared in a private class");
+				return false;
+			}
+			if(enclosingType.getNestingKind() == NestingKind.MEMBER && !enclosingType.getModifiers().contains(Modifier.STATIC)) {
+				error(type, "@Dimension fields can not be declared in an inner (non static) class");
+				return false;
+			}
+			if(enclosingType.getNestingKind() == NestingKind.LOCAL || enclosingType.getNestingKind() == NestingKind.ANONYMOUS) {
+				error(type, "@Dimension fields can not be declared in a local or anonymous class");
+				return false;
+			}
+		}
+
+		List<ExecutableElement> constructors = ElementFilter.constructorsIn(type.getEnclosedElements());
+		for(ExecutableElement constructor : constructors) {
+			if(constructor.getParameters().isEmpty() && !constructor.getModifiers().contains(Modifier.PRIVATE)) {
+				return true;
+			}
+		}
+		error(type, "Classes with @Dimension fields need a non private no argument constructor");
+		return false;
+	}
+
+	/**
+	 * Works out how to read and write the field, through the field itself or its getter and setter
+	 */
+	private Accessor accessor(TypeElement type, VariableElement field) {
+		TypeMirror collectionType = processingEnv.getTypeUtils().erasure(
+				processingEnv.getElementUtils().getTypeElement("java.util.Collection").asType());
+		TypeMirror fieldType = field.asType();
+
+		if(field.getModifiers().contains(Modifier.STATIC)) {
+			error(field, "@Dimension fields can not be static");
+			return null;
+		}
+		if(!processingEnv.getTypeUtils().isAssignable(processingEnv.getTypeUtils().erasure(fieldType), collectionType)) {
+			error(field, "@Dimension fields must be Collections");
+			return null;
+		}
+
+		Accessor accessor = new Accessor();
+		accessor.category = field.getSimpleName().toString();
+		accessor.type = fieldType.toString();
+
+		if(!field.getModifiers().contains(Modifier.PRIVATE)) {
+			accessor.read = "t." + accessor.category;
+			accessor.write = "t." + accessor.category + " = %s";
+			if(field.getModifiers().contains(Modifier.FINAL)) {
+				error(field, "@Dimension fields can not be final");
+				return null;
+			}
+			return accessor;
+		}
+
+		String capitalized = Character.toUpperCase(accessor.category.charAt(0)) + accessor.category.substring(1);
+		ExecutableElement getter = null;
+		ExecutableElement setter = null;
+		for(ExecutableElement method : ElementFilter.methodsIn(type.getEnclosedElements())) {
+			if(method.getModifiers().contains(Modifier.PRIVATE) || method.getModifiers().contains(Modifier.STATIC)) {
+				continue;
+			}
+			String name = method.getSimpleName().toString();
+			if(name.equals("get" + capitalized) && method.getParameters().isEmpty()) {
+				getter = method;
+			} else if(name.equals("set" + capitalized) && method.getParameters().size() == 1) {
+				setter = method;
+			}
+		}
+
+		if(getter == null || setter == null) {
+			error(field, "Private @Dimension fields need a non private get" + capitalized + "() and set" + capitalized + "(...)");
+			return null;
+		}
+
+		accessor.read = "t." + getter.getSimpleName() + "()";
+		accessor.write = "t." + setter.getSimpleName() + "(%s)";
+		return accessor;
+	}
+
+	/**
+	 * Main.Region -> Main_Region_SliceCodec, must agree with SliceCodecs.generatedName
+	 */
+	private static String codecSimpleName(TypeElement type) {
+		StringBuilder name = new StringBuilder(type.getSimpleName());
+		for(Element enclosing = type.getEnclosingElement(); enclosing instanceof TypeElement; enclosing = enclosing.getEnclosingElement()) {
+			name.insert(0, "_").insert(0, enclosing.getSimpleName());
+		}
+		return name.append(SliceCodecs.GENERATED_SUFFIX).toString();
+	}
+
+	private void error(Element element, String message) {
+		processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+	}
+}
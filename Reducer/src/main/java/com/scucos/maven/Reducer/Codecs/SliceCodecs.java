@@ -0,0 +1,60 @@
+package com.scucos.maven.Reducer.Codecs;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Looks up the SliceCodec to use for a class.
+ *
+ * The codec generated by the SliceCodecProcessor is preferred. It lives in the same package
+ * as the type and is named after the type's nested class path joined with underscores,
+ * e.g. Main.Region -> Main_Region_SliceCodec. Types without a generated codec get a
+ * ReflectiveSliceCodec. The lookup is done once per class.
+ */
+public class SliceCodecs {
+
+	public static final String GENERATED_SUFFIX = "_SliceCodec";
+
+	private static final Map<Class<?>, SliceCodec<?>> codecs = new ConcurrentHashMap<>();
+
+	private SliceCodecs() {
+
+	}
+
+	@SuppressWarnings("unchecked")
+	public static <T> SliceCodec<T> forClass(Class<T> tClass) {
+		return (SliceCodec<T>) codecs.computeIfAbsent(tClass, SliceCodecs::load);
+	}
+
+	/**
+	 * Registers a codec for the given class, replacing any generated or reflective one
+	 * @param tClass
+	 * @param codec
+	 */
+	public static <T> void register(Class<T> tClass, SliceCodec<T> codec) {
+		codecs.put(tClass, codec);
+	}
+
+	/**
+	 * The binary name of the codec the processor generates for the given class
+	 * @param tClass
+	 * @return
+	 */
+	public static String generatedName(Class<?> tClass) {
+		String name = tClass.getName();
+		int lastDot = name.lastIndexOf('.');
+		String packagePrefix = name.substring(0, lastDot + 1);
+		String simpleNames = name.substring(lastDot + 1).replace('$', '_');
+		return packagePrefix + simpleNames + GENERATED_SUFFIX;
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	private static SliceCodec<?> load(Class<?> tClass) {
+		try {
+			Class<?> codecClass = Class.forName(generatedName(tClass), true, tClass.getClassLoader());
+			return (SliceCodec<?>) codecClass.getConstructor().newInstance();
+		} catch (ReflectiveOperationException | LinkageError | ClassCastException e) {
+			return new ReflectiveSliceCodec(tClass);
+		}
+	}
+}
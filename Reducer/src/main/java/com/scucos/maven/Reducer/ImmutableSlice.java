@@ -0,0 +1,260 @@
+package com.scucos.maven.Reducer;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
+
+/**
+ * Read-only counterpart of Slice<T>, for slices that are hashed, deduplicated or ordered many times.
+ *
+ * An ImmutableSlice owns private copies of its collections and never changes them, so its volume
+ * and content hash are computed once, when it is built. Two ImmutableSlices are equal when they
+ * have the same type and hold the same objects in the same categories, whatever the collection
+ * classes (positions are compared as sets, as everywhere else in the reducers). Operations that
+ * would change a Slice in place, like unionAdd, return a new ImmutableSlice instead, which shares
+ * the collections of every category it didn't change with the slice it was built from.
+ *
+ * Collections keep their kind when copied: BitmapSets and IntervalSets stay what they are (so
+ * containment between encoded slices stays a bitmap or interval operation), Lists become
+ * ArrayLists and anything else becomes a HashSet, the same way Slice.detachEntry copies them.
+ *
+ * Runtime complexity:
+ * Building one, or any operation returning a new one, is O(d + c) for d categories and c the size
+ * of the collections it copies or hashes. volume(), hashCode() and compareTo() are O(1),
+ * equals() is O(d) for slices with different hashes and O(total size) otherwise.
+ *
+ * @param <T>
+ */
+public final class ImmutableSlice<T> implements Comparable<ImmutableSlice<T>> {
+
+	private final Class<T> tClass;
+	private final Map<String, Collection<?>> sliceMap;
+	private final long volume;
+	private final int hash;
+
+	private ImmutableSlice(Class<T> tClass, Map<String, Collection<?>> sliceMap) {
+		this.tClass = tClass;
+		this.sliceMap = sliceMap;
+
+		long volume = 1;
+		long hash = 0;
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			// Lists may hold a value twice, positions count once like everywhere else they are compared
+			Collection<?> objects = (entry.getValue() instanceof Set) ? entry.getValue() : new HashSet<>(entry.getValue());
+			volume = Math.multiplyExact(volume, Slice.sizeOf(objects));
+			hash += mix(entry.getKey().hashCode() * 0x9E3779B97F4A7C15L + objects.hashCode());
+		}
+		this.volume = volume;
+		this.hash = Long.hashCode(hash);
+	}
+
+	/**
+	 * An immutable copy of the slice, later changes to the slice or its collections don't affect it
+	 * @param slice
+	 * @return
+	 */
+	public static <T> ImmutableSlice<T> of(Slice<T> slice) {
+		Map<String, Collection<?>> sliceMap = new HashMap<>();
+		for(String category : slice.getCategories()) {
+			sliceMap.put(category, copyOf(slice.getEntry(category)));
+		}
+		return new ImmutableSlice<>(slice.getType(), sliceMap);
+	}
+
+	/**
+	 * A mutable Slice with its own copies of the collections, for the reducers to work on
+	 * @return
+	 */
+	public Slice<T> toSlice() {
+		Slice<T> slice = new Slice<>(tClass);
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			slice.addEntry(entry.getKey(), copyOf(entry.getValue()));
+		}
+		return slice;
+	}
+
+	public T toType() throws ObjectConstructionException {
+		return toSlice().toType();
+	}
+
+	public int getWidth() {
+		return sliceMap.size();
+	}
+
+	public Set<String> getCategories() {
+		return Collections.unmodifiableSet(sliceMap.keySet());
+	}
+
+	/**
+	 * A read-only view of the category's collection, or null if the slice doesn't have the category
+	 * @param category
+	 * @return
+	 */
+	public Collection<?> getEntry(Object category) {
+		Collection<?> objects = sliceMap.get(category);
+		if(objects == null) {
+			return null;
+		}
+		return (objects instanceof Set) ? Collections.unmodifiableSet((Set<?>) objects) : Collections.unmodifiableCollection(objects);
+	}
+
+	/**
+	 * The number of points covered, computed when the slice was built.
+	 * Values a List holds more than once are counted once.
+	 * @return
+	 */
+	public long volume() {
+		return volume;
+	}
+
+	// Operations returning new slices
+
+	/**
+	 * This slice with the category holding a copy of objects instead
+	 * @param category
+	 * @param objects
+	 * @return
+	 */
+	public ImmutableSlice<T> withEntry(String category, Collection<?> objects) {
+		Map<String, Collection<?>> sliceMap = new HashMap<>(this.sliceMap);
+		sliceMap.put(category, copyOf(objects));
+		return new ImmutableSlice<>(tClass, sliceMap);
+	}
+
+	/**
+	 * This slice without the category
+	 * @param category
+	 * @return
+	 */
+	public ImmutableSlice<T> withoutEntry(String category) {
+		if(!sliceMap.containsKey(category)) {
+			return this;
+		}
+		Map<String, Collection<?>> sliceMap = new HashMap<>(this.sliceMap);
+		sliceMap.remove(category);
+		return new ImmutableSlice<>(tClass, sliceMap);
+	}
+
+	/**
+	 * This slice with the category also holding the other slice's objects in it
+	 * @param category
+	 * @param other
+	 * @return this slice if nothing would be added
+	 */
+	@SuppressWarnings("unchecked")
+	public ImmutableSlice<T> union(String category, ImmutableSlice<T> other) {
+		Collection<?> objects = sliceMap.get(category);
+		Collection<?> otherObjects = other.sliceMap.get(category);
+		if(objects.containsAll(otherObjects)) {
+			return this;
+		}
+		Collection<Object> union = (Collection<Object>) copyOf(objects);
+		union.addAll(otherObjects);
+
+		Map<String, Collection<?>> sliceMap = new HashMap<>(this.sliceMap);
+		sliceMap.put(category, union);
+		return new ImmutableSlice<>(tClass, sliceMap);
+	}
+
+	// Comparisons
+
+	public boolean containedIn(ImmutableSlice<T> into) {
+		if(volume > into.volume) {
+			return false;
+		}
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			if(!into.sliceMap.get(entry.getKey()).containsAll(entry.getValue())) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * The categories in which the two slices don't hold the same objects.
+	 * Two slices with exactly one such category can be merged with union.
+	 * @param other
+	 * @return
+	 */
+	public List<String> differentCategories(ImmutableSlice<T> other) {
+		List<String> categories = new ArrayList<>();
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			if(!sameObjects(entry.getValue(), other.sliceMap.get(entry.getKey()))) {
+				categories.add(entry.getKey());
+			}
+		}
+		return categories;
+	}
+
+	/**
+	 * Orders by volume, largest first, the same way Slice does
+	 */
+	@Override
+	public int compareTo(ImmutableSlice<T> other) {
+		return Long.compare(other.volume, volume);
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(o == this) {
+			return true;
+		}
+		if(!(o instanceof ImmutableSlice)) {
+			return false;
+		}
+		ImmutableSlice<?> other = (ImmutableSlice<?>) o;
+		if(hash != other.hash || volume != other.volume || tClass != other.tClass || !sliceMap.keySet().equals(other.sliceMap.keySet())) {
+			return false;
+		}
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			if(!sameObjects(entry.getValue(), other.sliceMap.get(entry.getKey()))) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public String toString() {
+		return sliceMap.toString();
+	}
+
+	private static Collection<?> copyOf(Collection<?> objects) {
+		if(objects instanceof BitmapSet) {
+			return new BitmapSet((BitmapSet) objects);
+		} else if(objects instanceof IntervalSet) {
+			return new IntervalSet((IntervalSet) objects);
+		} else if(objects instanceof List) {
+			return new ArrayList<>(objects);
+		}
+		return new HashSet<>(objects);
+	}
+
+	private static boolean sameObjects(Collection<?> a, Collection<?> b) {
+		if(a instanceof Set && b instanceof Set) {
+			return a.equals(b);
+		}
+		return a.containsAll(b) && b.containsAll(a);
+	}
+
+	/**
+	 * The SplitMix64 finalizer, spreads the bits of each category's hash before they are summed
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+}
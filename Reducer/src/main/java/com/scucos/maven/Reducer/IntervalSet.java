@@ -0,0 +1,619 @@
+package com.scucos.maven.Reducer;
+
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+/**
+ * A Set of Integers or Longs stored as sorted, disjoint intervals of consecutive values, for
+ * ordered dimensions (ids, timestamps, price bands) with too many values to enumerate.
+ *
+ * A slice covering the populations 0..149 holds one interval instead of 150 boxed Integers.
+ * Adjacent intervals are always coalesced, so when a reducer unions two neighbouring ranges
+ * (which it does through addAll) they become one interval, and containsAll, addAll, removeAll
+ * and equals between two IntervalSets of the same value type walk the interval lists instead
+ * of the values. Mixing an IntervalSet with any other Collection still works, it just falls back
+ * to the regular Set behaviour, value by value.
+ *
+ * An IntervalSet holds either Integers or Longs, decided when it's created, and only ever
+ * contains values of that type, the way a HashSet<Integer> never contains a Long.
+ * hashCode() is kept up to date from a closed form per interval, so it is O(1) and agrees with
+ * every other Set implementation holding the same values.
+ *
+ * Runtime complexity:
+ * Let k be the number of intervals. contains is O(log k), adding or removing a value or a range
+ * is O(log k) plus O(k) to move the intervals after it. containsAll and addAll with another
+ * IntervalSet of j intervals are O(k + j), removeAll is j range removals and equals is O(k).
+ */
+public class IntervalSet extends AbstractSet<Object> {
+
+	private static final long[] EMPTY = new long[0];
+
+	private final boolean longs;
+
+	// bounds[2 * i] and bounds[2 * i + 1] are the first and last value of interval i, inclusive.
+	// The intervals are sorted and neither overlap nor touch
+	private long[] bounds = EMPTY;
+	private int intervals = 0;
+
+	private long size = 0;
+	private int hash = 0;
+
+	private int modCount = 0;
+
+	private IntervalSet(boolean longs) {
+		this.longs = longs;
+	}
+
+	public IntervalSet(IntervalSet other) {
+		this.longs = other.longs;
+		this.bounds = Arrays.copyOf(other.bounds, 2 * other.intervals);
+		this.intervals = other.intervals;
+		this.size = other.size;
+		this.hash = other.hash;
+	}
+
+	/**
+	 * An empty set of Integers
+	 * @return
+	 */
+	public static IntervalSet ofIntegers() {
+		return new IntervalSet(false);
+	}
+
+	/**
+	 * An empty set of Longs
+	 * @return
+	 */
+	public static IntervalSet ofLongs() {
+		return new IntervalSet(true);
+	}
+
+	/**
+	 * The objects as intervals. They must all be Integers or all be Longs, an empty collection
+	 * gives an empty set of Integers.
+	 * @param objects
+	 * @return
+	 * @throws ClassCastException if the objects are not all Integers or all Longs
+	 */
+	public static IntervalSet copyOf(Collection<?> objects) {
+		if(objects instanceof IntervalSet) {
+			return new IntervalSet((IntervalSet) objects);
+		}
+
+		long[] values = new long[objects.size()];
+		boolean longs = !objects.isEmpty() && objects.iterator().next() instanceof Long;
+		IntervalSet set = new IntervalSet(longs);
+		int count = 0;
+		for(Object object : objects) {
+			values[count++] = set.valueOf(object);
+		}
+		Arrays.sort(values);
+
+		// One pass over the sorted values, starting a new interval at every gap
+		for(int i = 0; i < count; i++) {
+			if(set.intervals > 0 && touches(set.bounds[2 * set.intervals - 1], values[i])) {
+				set.bounds[2 * set.intervals - 1] = values[i];
+			} else {
+				set.ensureCapacity(set.intervals + 1);
+				set.bounds[2 * set.intervals] = values[i];
+				set.bounds[2 * set.intervals + 1] = values[i];
+				set.intervals += 1;
+			}
+		}
+		set.recount();
+		return set;
+	}
+
+	/**
+	 * @return true if the set holds Longs, false if it holds Integers
+	 */
+	public boolean holdsLongs() {
+		return longs;
+	}
+
+	/**
+	 * @return the number of intervals
+	 */
+	public int intervalCount() {
+		return intervals;
+	}
+
+	/**
+	 * @param interval
+	 * @return the first value of the interval
+	 */
+	public long lowerBound(int interval) {
+		return bounds[2 * interval];
+	}
+
+	/**
+	 * @param interval
+	 * @return the last value of the interval, inclusive
+	 */
+	public long upperBound(int interval) {
+		return bounds[2 * interval + 1];
+	}
+
+	/**
+	 * The number of values, which unlike size() doesn't saturate at Integer.MAX_VALUE
+	 * @return
+	 */
+	public long longSize() {
+		return size;
+	}
+
+	// Set operations
+
+	@Override
+	public int size() {
+		return (int) Math.min(size, Integer.MAX_VALUE);
+	}
+
+	@Override
+	public boolean contains(Object o) {
+		if(!holds(o)) {
+			return false;
+		}
+		long value = ((Number) o).longValue();
+		int interval = floor(value);
+		return interval >= 0 && value <= bounds[2 * interval + 1];
+	}
+
+	@Override
+	public boolean add(Object o) {
+		long value = valueOf(o);
+		return addRange(value, value);
+	}
+
+	@Override
+	public boolean remove(Object o) {
+		if(!holds(o)) {
+			return false;
+		}
+		long value = ((Number) o).longValue();
+		return removeRange(value, value);
+	}
+
+	@Override
+	public void clear() {
+		bounds = EMPTY;
+		intervals = 0;
+		size = 0;
+		hash = 0;
+		modCount += 1;
+	}
+
+	@Override
+	public boolean containsAll(Collection<?> c) {
+		if(!sameType(c)) {
+			return super.containsAll(c);
+		}
+
+		IntervalSet other = (IntervalSet) c;
+		if(other.size > size) {
+			return false;
+		}
+
+		int i = 0;
+		for(int j = 0; j < other.intervals; j++) {
+			long from = other.bounds[2 * j];
+			long to = other.bounds[2 * j + 1];
+			while(i < intervals && bounds[2 * i + 1] < from) {
+				i++;
+			}
+			if(i == intervals || bounds[2 * i] > from || bounds[2 * i + 1] < to) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public boolean addAll(Collection<? extends Object> c) {
+		if(!sameType(c)) {
+			return super.addAll(c);
+		}
+
+		IntervalSet other = (IntervalSet) c;
+		if(other.intervals == 0 || other == this) {
+			return false;
+		}
+
+		long[] merged = new long[2 * (intervals + other.intervals)];
+		int count = 0;
+		int i = 0;
+		int j = 0;
+		while(i < intervals || j < other.intervals) {
+			long from;
+			long to;
+			if(j == other.intervals || (i < intervals && bounds[2 * i] <= other.bounds[2 * j])) {
+				from = bounds[2 * i];
+				to = bounds[2 * i + 1];
+				i++;
+			} else {
+				from = other.bounds[2 * j];
+				to = other.bounds[2 * j + 1];
+				j++;
+			}
+
+			if(count > 0 && touches(merged[2 * count - 1], from)) {
+				merged[2 * count - 1] = Math.max(merged[2 * count - 1], to);
+			} else {
+				merged[2 * count] = from;
+				merged[2 * count + 1] = to;
+				count++;
+			}
+		}
+
+		long oldSize = size;
+		bounds = merged;
+		intervals = count;
+		recount();
+		if(size == oldSize) {
+			return false;
+		}
+		modCount += 1;
+		return true;
+	}
+
+	@Override
+	public boolean removeAll(Collection<?> c) {
+		if(!sameType(c)) {
+			return super.removeAll(c);
+		}
+
+		IntervalSet other = (IntervalSet) c;
+		if(other == this) {
+			boolean changed = size > 0;
+			clear();
+			return changed;
+		}
+
+		boolean changed = false;
+		for(int j = 0; j < other.intervals && intervals > 0; j++) {
+			changed |= removeRange(other.bounds[2 * j], other.bounds[2 * j + 1]);
+		}
+		return changed;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(o == this) {
+			return true;
+		}
+		if(!sameType(o)) {
+			return super.equals(o);
+		}
+
+		IntervalSet other = (IntervalSet) o;
+		if(other.size != size || other.hash != hash || other.intervals != intervals) {
+			return false;
+		}
+		for(int i = 0; i < 2 * intervals; i++) {
+			if(bounds[i] != other.bounds[i]) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public Iterator<Object> iterator() {
+		return new Iterator<Object>() {
+			int interval = 0;
+			long next = (intervals > 0) ? bounds[0] : 0;
+			boolean hasNext = intervals > 0;
+			boolean removable = false;
+			long last;
+			int expectedModCount = modCount;
+
+			@Override
+			public boolean hasNext() {
+				return hasNext;
+			}
+
+			@Override
+			public Object next() {
+				if(!hasNext) {
+					throw new NoSuchElementException();
+				}
+				if(modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+
+				last = next;
+				removable = true;
+				if(next < bounds[2 * interval + 1]) {
+					next++;
+				} else if(++interval < intervals) {
+					next = bounds[2 * interval];
+				} else {
+					hasNext = false;
+				}
+				return box(last);
+			}
+
+			@Override
+			public void remove() {
+				if(!removable) {
+					throw new IllegalStateException();
+				}
+				if(modCount != expectedModCount) {
+					throw new ConcurrentModificationException();
+				}
+
+				removeRange(last, last);
+				expectedModCount = modCount;
+				removable = false;
+				if(hasNext) {
+					interval = floor(next);
+				}
+			}
+		};
+	}
+
+	/**
+	 * Lists the intervals instead of every value, e.g. [0..149, 200]
+	 */
+	@Override
+	public String toString() {
+		StringBuilder builder = new StringBuilder("[");
+		for(int i = 0; i < intervals; i++) {
+			if(i > 0) {
+				builder.append(", ");
+			}
+			builder.append(bounds[2 * i]);
+			if(bounds[2 * i + 1] != bounds[2 * i]) {
+				builder.append("..").append(bounds[2 * i + 1]);
+			}
+		}
+		return builder.append(']').toString();
+	}
+
+	// Interval operations
+
+	/**
+	 * Adds every value from from to to, inclusive
+	 * @param from
+	 * @param to
+	 * @return true if any of them was new
+	 */
+	public boolean addRange(long from, long to) {
+		checkRange(from, to);
+
+		// The intervals first..last overlap or touch the range, and are replaced by their union with it
+		int first = firstEndingAtOrAfter(from);
+		while(first > 0 && touches(bounds[2 * first - 1], from)) {
+			first--;
+		}
+		int last = first - 1;
+		while(last + 1 < intervals && touches(to, bounds[2 * (last + 1)])) {
+			last++;
+		}
+
+		long mergedFrom = from;
+		long mergedTo = to;
+		long removedSize = 0;
+		int removedHash = 0;
+		for(int i = first; i <= last; i++) {
+			mergedFrom = Math.min(mergedFrom, bounds[2 * i]);
+			mergedTo = Math.max(mergedTo, bounds[2 * i + 1]);
+			removedSize += bounds[2 * i + 1] - bounds[2 * i] + 1;
+			removedHash += rangeHash(bounds[2 * i], bounds[2 * i + 1]);
+		}
+
+		long addedSize = mergedTo - mergedFrom + 1;
+		if(addedSize == removedSize) { // Already held
+			return false;
+		}
+
+		replace(first, last - first + 1, new long[] { mergedFrom, mergedTo }, 1);
+		size += addedSize - removedSize;
+		hash += rangeHash(mergedFrom, mergedTo) - removedHash;
+		modCount += 1;
+		return true;
+	}
+
+	/**
+	 * Removes every value from from to to, inclusive
+	 * @param from
+	 * @param to
+	 * @return true if any of them was held
+	 */
+	public boolean removeRange(long from, long to) {
+		if(from > to) {
+			return false;
+		}
+
+		int first = firstEndingAtOrAfter(from);
+		int last = first - 1;
+		while(last + 1 < intervals && bounds[2 * (last + 1)] <= to) {
+			last++;
+		}
+		if(last < first) {
+			return false;
+		}
+
+		// What is left of the first and last overlapping intervals on either side of the range
+		long[] kept = new long[4];
+		int keptCount = 0;
+		if(bounds[2 * first] < from) {
+			kept[2 * keptCount] = bounds[2 * first];
+			kept[2 * keptCount + 1] = from - 1;
+			keptCount++;
+		}
+		if(bounds[2 * last + 1] > to) {
+			kept[2 * keptCount] = to + 1;
+			kept[2 * keptCount + 1] = bounds[2 * last + 1];
+			keptCount++;
+		}
+
+		for(int i = first; i <= last; i++) {
+			long removedFrom = Math.max(from, bounds[2 * i]);
+			long removedTo = Math.min(to, bounds[2 * i + 1]);
+			size -= removedTo - removedFrom + 1;
+			hash -= rangeHash(removedFrom, removedTo);
+		}
+
+		replace(first, last - first + 1, kept, keptCount);
+		modCount += 1;
+		return true;
+	}
+
+	// Helpers
+
+	/**
+	 * Replaces count intervals starting at index with the first replacementCount intervals of replacement
+	 */
+	private void replace(int index, int count, long[] replacement, int replacementCount) {
+		int newIntervals = intervals - count + replacementCount;
+		ensureCapacity(newIntervals);
+		System.arraycopy(bounds, 2 * (index + count), bounds, 2 * (index + replacementCount), 2 * (intervals - index - count));
+		System.arraycopy(replacement, 0, bounds, 2 * index, 2 * replacementCount);
+		intervals = newIntervals;
+	}
+
+	private void ensureCapacity(int intervalCount) {
+		if(2 * intervalCount > bounds.length) {
+			bounds = Arrays.copyOf(bounds, Math.max(2 * intervalCount, 2 * bounds.length));
+		}
+	}
+
+	/**
+	 * The last interval starting at or before value, or -1 if there is none
+	 */
+	private int floor(long value) {
+		int low = 0;
+		int high = intervals - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(bounds[2 * mid] <= value) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return high;
+	}
+
+	/**
+	 * The first interval ending at or after value, intervals if there is none
+	 */
+	private int firstEndingAtOrAfter(long value) {
+		int low = 0;
+		int high = intervals - 1;
+		while(low <= high) {
+			int mid = (low + high) >>> 1;
+			if(bounds[2 * mid + 1] < value) {
+				low = mid + 1;
+			} else {
+				high = mid - 1;
+			}
+		}
+		return low;
+	}
+
+	/**
+	 * True if an interval ending at end and one starting at start (start > end, or overlapping) leave no gap
+	 */
+	private static boolean touches(long end, long start) {
+		return start <= end || start - 1 == end;
+	}
+
+	private void recount() {
+		size = 0;
+		hash = 0;
+		for(int i = 0; i < intervals; i++) {
+			size += bounds[2 * i + 1] - bounds[2 * i] + 1;
+			hash += rangeHash(bounds[2 * i], bounds[2 * i + 1]);
+		}
+	}
+
+	private void checkRange(long from, long to) {
+		if(from > to) {
+			throw new IllegalArgumentException("Empty range " + from + ".." + to);
+		}
+		if(!longs && (from < Integer.MIN_VALUE || to > Integer.MAX_VALUE)) {
+			throw new IllegalArgumentException("Range " + from + ".." + to + " doesn't fit a set of Integers");
+		}
+	}
+
+	private boolean holds(Object o) {
+		return longs ? o instanceof Long : o instanceof Integer;
+	}
+
+	private long valueOf(Object o) {
+		if(!holds(o)) {
+			throw new ClassCastException("This IntervalSet holds " + (longs ? "Longs" : "Integers") + ", got " + (o == null ? null : o.getClass().getName()));
+		}
+		return ((Number) o).longValue();
+	}
+
+	private Object box(long value) {
+		return longs ? (Object) Long.valueOf(value) : (Object) Integer.valueOf((int) value);
+	}
+
+	private boolean sameType(Object o) {
+		return o instanceof IntervalSet && ((IntervalSet) o).longs == longs;
+	}
+
+	/**
+	 * The sum of the hash codes of the values from from to to, which is what they add to Set.hashCode
+	 */
+	private int rangeHash(long from, long to) {
+		if(!longs) {
+			// Integer.hashCode is the value, so this is an arithmetic series. One of count and
+			// from + to is even, and overflowing the long keeps the low 32 bits right
+			long count = to - from + 1;
+			long sum = (count % 2 == 0) ? (count / 2) * (from + to) : count * ((from + to) / 2);
+			return (int) sum;
+		}
+
+		if(from < 0 && to >= 0) { // Split where the unsigned order the blocks below use wraps around
+			return rangeHash(from, -1) + rangeHash(0, to);
+		}
+
+		// Long.hashCode is the low 32 bits xor the high 32 bits, so the range is split into blocks of
+		// values sharing their high 32 bits. Summed over a whole block the xor only permutes the
+		// low 32 bits, which add up to 2^31 * (2^32 - 1), that is 2^31 modulo 2^32
+		long fromBlock = from >>> 32;
+		long toBlock = to >>> 32;
+		if(fromBlock == toBlock) {
+			return xorSum(from & 0xFFFFFFFFL, to & 0xFFFFFFFFL, fromBlock);
+		}
+		return xorSum(from & 0xFFFFFFFFL, 0xFFFFFFFFL, fromBlock)
+				+ (int) ((toBlock - fromBlock - 1) * 0x80000000L)
+				+ xorSum(0, to & 0xFFFFFFFFL, toBlock);
+	}
+
+	/**
+	 * The sum of x ^ mask over the 32 bit values from from to to, modulo 2^32, one bit at a time
+	 */
+	private static int xorSum(long from, long to, long mask) {
+		long count = to - from + 1;
+		long sum = 0;
+		for(int bit = 0; bit < 32; bit++) {
+			long ones = onesBelow(to + 1, bit) - onesBelow(from, bit);
+			long set = ((mask >>> bit) & 1) == 0 ? ones : count - ones;
+			sum += set << bit;
+		}
+		return (int) sum;
+	}
+
+	/**
+	 * How many of the values 0..n - 1 have the bit set
+	 */
+	private static long onesBelow(long n, int bit) {
+		long period = 1L << (bit + 1);
+		return (n / period) * (1L << bit) + Math.max(0, (n % period) - (1L << bit));
+	}
+}
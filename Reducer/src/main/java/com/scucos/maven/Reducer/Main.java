@@ -4,8 +4,10 @@ import java.util.HashSet;
 import java.util.Set;
 
 import com.scucos.maven.Reducer.Reducers.NewRecursiveReducer;
+import com.scucos.maven.Reducer.Reducers.PrintingReductionListener;
 import com.scucos.maven.Reducer.Reducers.RecursiveReducer;
 import com.scucos.maven.Reducer.Reducers.Reducer;
+import com.scucos.maven.Reducer.Reducers.ReductionListener;
 
 public class Main {
 
@@ -31,9 +33,21 @@ public class Main {
 	
 	public static void main(String[] args) {
 		
-		Reducer<Region> recursiveReducer = new RecursiveReducer<Region>(){};
+		ReductionListener printing = new PrintingReductionListener();
 		
-		Reducer<Region> newRecursiveReducer = new NewRecursiveReducer<Region>() {};
+		Reducer<Region> recursiveReducer = new RecursiveReducer<Region>() {
+			@Override
+			public ReductionListener getListener() {
+				return printing;
+			}
+		};
+		
+		Reducer<Region> newRecursiveReducer = new NewRecursiveReducer<Region>() {
+			@Override
+			public ReductionListener getListener() {
+				return printing;
+			}
+		};
 	 	
 
 		System.out.println("Recursive 3 Dimensional Full Cube\n");
@@ -0,0 +1,182 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.function.BiConsumer;
+
+/**
+ * Reduces many independent sets concurrently with one Reducer<T>, for workloads made of lots of
+ * small reductions (one set per tenant, per day, ...) that are too small to be worth splitting up
+ * one by one the way ShardedReducer does.
+ *
+ * Every set is reduced by its own call of the reducer's reduce on the executor, and its result is
+ * delivered through a CompletableFuture. At most maxInFlight sets are queued or being reduced at a
+ * time: submitting another one blocks the caller until one of them finishes, so a producer reading
+ * the sets from a database or a file never holds more than maxInFlight of them in memory.
+ *
+ * The reducer instance is shared by every task. The reducers of this package keep no state between
+ * calls and copy a collection before changing it, so they can be shared as long as the listener
+ * they report to is thread-safe. CachingReducer synchronizes its cache, IncrementalReducer is not
+ * a Reducer and must not be shared.
+ *
+ * Runtime complexity:
+ * Reducing k sets of sizes n1..nk costs R(n1) + ... + R(nk) spread over the executor's threads,
+ * plus O(1) per set for scheduling.
+ *
+ * @param <T>
+ */
+public class BatchReducer<T> implements AutoCloseable {
+
+	private final Reducer<T> reducer;
+	private final Executor executor;
+	private final boolean ownsExecutor;
+	private final Semaphore inFlight;
+
+	/**
+	 * Reduces on one thread per core, with up to four sets per thread in flight
+	 * @param reducer
+	 */
+	public BatchReducer(Reducer<T> reducer) {
+		this(reducer, Runtime.getRuntime().availableProcessors());
+	}
+
+	/**
+	 * Reduces on a pool of its own, with up to four sets per thread in flight.
+	 * The pool is shut down by close().
+	 * @param reducer the reducer every set is reduced with
+	 * @param threads the number of threads of the pool
+	 */
+	public BatchReducer(Reducer<T> reducer, int threads) {
+		this(reducer, newPool(threads), threads * 4, true);
+	}
+
+	/**
+	 * @param reducer the reducer every set is reduced with
+	 * @param executor the executor the sets are reduced on, close() leaves it running
+	 * @param maxInFlight the most sets that are queued or being reduced at a time
+	 */
+	public BatchReducer(Reducer<T> reducer, Executor executor, int maxInFlight) {
+		this(reducer, executor, maxInFlight, false);
+	}
+
+	private BatchReducer(Reducer<T> reducer, Executor executor, int maxInFlight, boolean ownsExecutor) {
+		if(maxInFlight < 1) {
+			throw new IllegalArgumentException("At least one set has to be in flight, got " + maxInFlight);
+		}
+		this.reducer = reducer;
+		this.executor = executor;
+		this.ownsExecutor = ownsExecutor;
+		this.inFlight = new Semaphore(maxInFlight);
+	}
+
+	/**
+	 * Schedules the set to be reduced, blocking while maxInFlight sets are already in flight
+	 * @param ts
+	 * @return the reduced set
+	 * @throws InterruptedException if interrupted while waiting for a set to finish
+	 */
+	public CompletableFuture<Set<T>> submit(Set<T> ts) throws InterruptedException {
+		return submit(ts, ReductionBudget.UNLIMITED).thenApply(ReductionResult::getReduced);
+	}
+
+	/**
+	 * Schedules the set to be reduced within the budget, blocking while maxInFlight sets are
+	 * already in flight. The budget starts when the set's reduction does, not when it is submitted.
+	 * @param ts
+	 * @param budget
+	 * @return the reduced set and whether the reducer reached its fixpoint
+	 * @throws InterruptedException if interrupted while waiting for a set to finish
+	 */
+	public CompletableFuture<ReductionResult<T>> submit(Set<T> ts, ReductionBudget budget) throws InterruptedException {
+		inFlight.acquire();
+		CompletableFuture<ReductionResult<T>> future = new CompletableFuture<>();
+		try {
+			executor.execute(() -> {
+				ReductionResult<T> result = null;
+				Throwable failure = null;
+				try {
+					result = reducer.reduce(ts, budget);
+				} catch(Throwable e) {
+					failure = e;
+				} finally {
+					// Released before completing, so stages chained on the future can submit again
+					inFlight.release();
+				}
+				if(failure != null) {
+					future.completeExceptionally(failure);
+				} else {
+					future.complete(result);
+				}
+			});
+		} catch(RejectedExecutionException e) {
+			inFlight.release();
+			throw e;
+		}
+		return future;
+	}
+
+	/**
+	 * Schedules every set to be reduced, blocking while maxInFlight sets are already in flight
+	 * @param sets
+	 * @return the reduced sets by the same keys, in the iteration order of sets
+	 * @throws InterruptedException if interrupted while waiting for a set to finish
+	 */
+	public <K> Map<K, CompletableFuture<Set<T>>> reduceAll(Map<K, Set<T>> sets) throws InterruptedException {
+		Map<K, CompletableFuture<Set<T>>> reduced = new LinkedHashMap<>();
+		for(Map.Entry<K, Set<T>> entry : sets.entrySet()) {
+			reduced.put(entry.getKey(), submit(entry.getValue()));
+		}
+		return reduced;
+	}
+
+	/**
+	 * Streams the sets through the reducer: each one is only read from the iterator once there is
+	 * room for it, and handed to onReduced (on the thread that reduced it) as soon as it is reduced.
+	 * Nothing keeps the results after that, so the sets don't all have to fit in memory at once.
+	 * @param sets
+	 * @param onReduced called with the key and the reduced set, from several threads at once
+	 * @return completes once every set was handed to onReduced, or exceptionally with the first failure
+	 * @throws InterruptedException if interrupted while waiting for a set to finish
+	 */
+	public <K> CompletableFuture<Void> reduceEach(Iterator<? extends Map.Entry<K, Set<T>>> sets, BiConsumer<? super K, ? super Set<T>> onReduced) throws InterruptedException {
+		List<CompletableFuture<Void>> consumed = new ArrayList<>();
+		while(sets.hasNext()) {
+			Map.Entry<K, Set<T>> entry = sets.next();
+			K key = entry.getKey();
+			consumed.add(submit(entry.getValue()).thenAccept(reduced -> onReduced.accept(key, reduced)));
+		}
+		return CompletableFuture.allOf(consumed.toArray(new CompletableFuture<?>[consumed.size()]));
+	}
+
+	/**
+	 * Shuts down the pool created by the constructor, after the sets already submitted are reduced.
+	 * An executor given to the constructor is left running.
+	 */
+	@Override
+	public void close() {
+		if(ownsExecutor) {
+			((ExecutorService) executor).shutdown();
+		}
+	}
+
+	private static ExecutorService newPool(int threads) {
+		if(threads < 1) {
+			throw new IllegalArgumentException("At least one thread is needed, got " + threads);
+		}
+		return Executors.newFixedThreadPool(threads, runnable -> {
+			Thread thread = new Thread(runnable, "BatchReducer");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+}
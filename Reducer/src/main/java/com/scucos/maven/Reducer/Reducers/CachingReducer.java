@@ -0,0 +1,284 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.SliceIndex;
+import com.scucos.maven.Reducer.Slice.SliceConstructionException;
+import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
+
+/**
+ * Wraps any Reducer<T> and caches its results by the content of the input, so reducing the same
+ * point set again skips reduceSlices entirely.
+ *
+ * The cache key is a fingerprint of the input slices that doesn't depend on their order: every
+ * slice is hashed from its categories and collections, and the slice hashes are mixed and summed
+ * into 128 bits along with the slice count. Since values only contribute their 32 bit hashCode,
+ * two different inputs can still share a fingerprint, so a hit is verified against the cached
+ * result: every input slice must be contained in a cached slice and the volumes must add up,
+ * which means the cached slices cover exactly the input. Otherwise the input is reduced again.
+ *
+ * To make equal inputs reduce to equal results the delegate always gets the slices in the same
+ * order (sorted by their content hash) instead of the caller's iteration order. Cached results
+ * are held as private copies and every hit returns fresh copies of them, so callers may modify
+ * what they get back.
+ *
+ * Entries are evicted least recently used first once the cached slices hold more than maxWeight
+ * values in total. Results cut short by a ReductionBudget are not cached.
+ *
+ * Runtime complexity:
+ * Let n be the number of input slices and d the number of categories. Fingerprinting is
+ * O(n * d) collection hashes, and verifying a hit is one SliceIndex lookup and containment check
+ * per input slice. A hit costs O(n * d) plus copying the r cached slices, a miss adds the
+ * delegate's cost, an O(n log n) sort of the input and indexing the result.
+ *
+ * @param <T>
+ */
+public class CachingReducer<T> implements Reducer<T> {
+
+	public static final long DEFAULT_MAX_WEIGHT = 1 << 22;
+
+	private final Reducer<T> delegate;
+	private final long maxWeight;
+
+	private final LinkedHashMap<Fingerprint, CachedResult<T>> cache = new LinkedHashMap<>(16, 0.75f, true);
+	private long weight = 0;
+
+	private final AtomicLong hits = new AtomicLong();
+	private final AtomicLong misses = new AtomicLong();
+
+	/**
+	 * Caches up to DEFAULT_MAX_WEIGHT values
+	 * @param delegate
+	 */
+	public CachingReducer(Reducer<T> delegate) {
+		this(delegate, DEFAULT_MAX_WEIGHT);
+	}
+
+	/**
+	 * @param delegate the reducer whose results are cached
+	 * @param maxWeight the most values (summed over every category of every cached slice) the cache holds
+	 */
+	public CachingReducer(Reducer<T> delegate, long maxWeight) {
+		this.delegate = delegate;
+		this.maxWeight = maxWeight;
+	}
+
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
+
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		Map<Slice<T>, Long> hashes = new HashMap<>();
+		for(Slice<T> slice : slices) {
+			hashes.put(slice, contentHash(slice));
+		}
+		Fingerprint fingerprint = new Fingerprint(hashes.values());
+
+		CachedResult<T> cached = get(fingerprint);
+		if(cached != null && cached.covers(slices)) {
+			hits.incrementAndGet();
+			return cached.copy();
+		}
+		misses.incrementAndGet();
+
+		List<Slice<T>> ordered = new ArrayList<>(slices);
+		ordered.sort(Comparator.comparingLong(hashes::get));
+		Set<Slice<T>> reduced = delegate.reduceSlices(new LinkedHashSet<>(ordered), tracker);
+
+		if(!tracker.isStopped()) {
+			put(fingerprint, new CachedResult<>(reduced));
+		}
+		return reduced;
+	}
+
+	/**
+	 * The number of reductions answered from the cache
+	 * @return
+	 */
+	public long getHits() {
+		return hits.get();
+	}
+
+	/**
+	 * The number of reductions handed to the delegate
+	 * @return
+	 */
+	public long getMisses() {
+		return misses.get();
+	}
+
+	/**
+	 * Empties the cache
+	 */
+	public synchronized void clear() {
+		cache.clear();
+		weight = 0;
+	}
+
+	private synchronized CachedResult<T> get(Fingerprint fingerprint) {
+		return cache.get(fingerprint);
+	}
+
+	private synchronized void put(Fingerprint fingerprint, CachedResult<T> result) {
+		if(result.weight > maxWeight) {
+			return;
+		}
+
+		CachedResult<T> replaced = cache.put(fingerprint, result);
+		weight += result.weight - (replaced == null ? 0 : replaced.weight);
+
+		Iterator<CachedResult<T>> eldest = cache.values().iterator();
+		while(weight > maxWeight) {
+			weight -= eldest.next().weight;
+			eldest.remove();
+		}
+	}
+
+	/**
+	 * Hashes a slice from its categories and collections, independent of the category order
+	 */
+	static long contentHash(Slice<?> slice) {
+		long hash = 0;
+		for(String category : slice.getCategories()) {
+			hash += mix(category.hashCode() * 0x9E3779B97F4A7C15L + slice.getEntry(category).hashCode());
+		}
+		return hash;
+	}
+
+	/**
+	 * The SplitMix64 finalizer, spreads the bits of the combined hashes before they are summed
+	 */
+	private static long mix(long z) {
+		z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+		z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+		return z ^ (z >>> 31);
+	}
+
+	@Override
+	public ReductionListener getListener() {
+		return delegate.getListener();
+	}
+
+	@Override
+	public Slice<T> toSlice(T t) throws SliceConstructionException {
+		return delegate.toSlice(t);
+	}
+
+	@Override
+	public T fromSlice(Slice<T> slice) throws ObjectConstructionException {
+		return delegate.fromSlice(slice);
+	}
+
+	/**
+	 * Order-independent 128 bit digest of a set of slice hashes
+	 */
+	static final class Fingerprint {
+		private final long sum;
+		private final long mixedSum;
+		private final int size;
+
+		Fingerprint(Collection<Long> hashes) {
+			long sum = 0;
+			long mixedSum = 0;
+			for(long hash : hashes) {
+				sum += hash;
+				mixedSum += mix(hash ^ 0x632BE59BD9B4E019L);
+			}
+			this.sum = sum;
+			this.mixedSum = mixedSum;
+			this.size = hashes.size();
+		}
+
+		@Override
+		public boolean equals(Object other) {
+			if(!(other instanceof Fingerprint)) {
+				return false;
+			}
+			Fingerprint fingerprint = (Fingerprint) other;
+			return sum == fingerprint.sum && mixedSum == fingerprint.mixedSum && size == fingerprint.size;
+		}
+
+		@Override
+		public int hashCode() {
+			return Long.hashCode(sum ^ mixedSum) * 31 + size;
+		}
+	}
+
+	/**
+	 * A reduced result, indexed to verify hits
+	 */
+	private static final class CachedResult<T> {
+		private final SliceIndex<T> index;
+		private final long volume;
+		private final long weight;
+
+		CachedResult(Set<Slice<T>> reduced) {
+			this.index = new SliceIndex<>(reduced);
+
+			long volume = 0;
+			long weight = 0;
+			for(Slice<T> slice : index.getSlices()) {
+				volume += slice.volume();
+				for(String category : slice.getCategories()) {
+					weight += slice.getEntry(category).size();
+				}
+			}
+			this.volume = volume;
+			this.weight = weight;
+		}
+
+		/**
+		 * True if these slices cover exactly the same points as the given (non overlapping) slices
+		 */
+		boolean covers(Set<Slice<T>> slices) {
+			long covered = 0;
+			Map<String, Object> point = new HashMap<>();
+			for(Slice<T> slice : slices) {
+				point.clear();
+				for(String category : slice.getCategories()) {
+					Collection<?> objects = slice.getEntry(category);
+					if(objects.isEmpty()) {
+						return false;
+					}
+					point.put(category, objects.iterator().next());
+				}
+
+				Slice<T> containing = index.find(point);
+				if(containing == null || containing.getWidth() != slice.getWidth() || !slice.containedIn(containing)) {
+					return false;
+				}
+				covered += slice.volume();
+			}
+			return covered == volume;
+		}
+
+		/**
+		 * Copies of the cached slices with their own collections
+		 */
+		Set<Slice<T>> copy() {
+			Set<Slice<T>> copies = new HashSet<>();
+			for(Slice<T> slice : index.getSlices()) {
+				Slice<T> copy = slice.copy();
+				for(String category : slice.getCategories()) {
+					copy.detachEntry(category);
+				}
+				copies.add(copy);
+			}
+			return copies;
+		}
+	}
+}
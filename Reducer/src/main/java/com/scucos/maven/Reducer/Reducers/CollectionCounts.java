@@ -0,0 +1,226 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Count state of the recursive reducers: for every category, how many of the working slices hold
+ * each collection.
+ *
+ * Collections are interned to int ids, one per distinct (category, contents) pair, and the counts
+ * are a primitive int[] indexed by id. Interning hashes a collection's contents once, when it is
+ * first seen. After that, ids are found by the identity of the collection object (every collection
+ * held by a slice is registered when its id is handed out), so updating a count never rehashes a
+ * collection or boxes an Integer. Collections must not be modified once they have an id.
+ *
+ * To find the most common collection without scanning every id, the ids with a positive count
+ * are kept in a bucket queue: one doubly linked list per count, threaded through int arrays, and
+ * a cursor on the highest non-empty bucket. Changing a count moves its id to the head of the new
+ * bucket, and the cursor only moves down lazily, while looking for the maximum.
+ *
+ * Runtime complexity:
+ * Building is O(n * d) content hashes for n slices of d categories, every later lookup is an
+ * identity hash and O(1) probes on average. Changing a count is O(1). mostCommon is O(1)
+ * amortized: the cursor moves down at most once per bucket it moved up (or jumped) past.
+ */
+final class CollectionCounts {
+
+	private final Map<String, Map<Collection<?>, Integer>> interned = new HashMap<>();
+	private final List<Collection<?>> objects = new ArrayList<>();
+	private final List<String> categories = new ArrayList<>();
+	private int[] counts = new int[16];
+
+	// Bucket queue over the positive counts, -1 ends a list
+	private int[] next = new int[16];
+	private int[] previous = new int[16];
+	private int[] heads = filled(16);
+	private int highest = 0;
+
+	// Open addressing map from collection identity to id
+	private Object[] keys = new Object[64];
+	private int[] values = new int[64];
+	private int registered = 0;
+
+	/**
+	 * Counts the collections the slices of rows[from, to) hold in the first width categories of order
+	 * @param rows
+	 * @param from
+	 * @param to
+	 * @param order
+	 * @param width
+	 */
+	<T> CollectionCounts(Slice<T>[] rows, int from, int to, String[] order, int width) {
+		for(int i = from; i < to; i++) {
+			add(rows[i], order, width, 1);
+		}
+	}
+
+	/**
+	 * The id of the collection in the category, interning it if it's new
+	 * @param category
+	 * @param collection
+	 * @return
+	 */
+	int id(String category, Collection<?> collection) {
+		int slot = slot(collection);
+		if(keys[slot] != null) {
+			int id = values[slot];
+			if(categories.get(id).equals(category)) {
+				return id;
+			}
+			// The same instance is held in another category too, only the first one is found by identity
+			return intern(category, collection);
+		}
+
+		int id = intern(category, collection);
+		register(slot, collection, id);
+		return id;
+	}
+
+	private int intern(String category, Collection<?> collection) {
+		Map<Collection<?>, Integer> categoryIds = interned.computeIfAbsent(category, c -> new HashMap<>());
+		Integer id = categoryIds.get(collection);
+		if(id == null) {
+			id = objects.size();
+			categoryIds.put(collection, id);
+			objects.add(collection);
+			categories.add(category);
+			if(id == counts.length) {
+				counts = Arrays.copyOf(counts, id * 2);
+				next = Arrays.copyOf(next, id * 2);
+				previous = Arrays.copyOf(previous, id * 2);
+			}
+		}
+		return id;
+	}
+
+	/**
+	 * Adds delta to the count of the collections the slice holds in the first width categories of order
+	 * @param slice
+	 * @param order
+	 * @param width
+	 * @param delta
+	 */
+	<T> void add(Slice<T> slice, String[] order, int width, int delta) {
+		for(int c = 0; c < width; c++) {
+			add(id(order[c], slice.getEntry(order[c])), delta);
+		}
+	}
+
+	void add(int id, int delta) {
+		setCount(id, counts[id] + delta);
+	}
+
+	int count(int id) {
+		return counts[id];
+	}
+
+	void setCount(int id, int count) {
+		int old = counts[id];
+		counts[id] = count;
+		if(old == count) {
+			return;
+		}
+		if(old > 0) {
+			unlink(id, old);
+		}
+		if(count > 0) {
+			link(id, count);
+		}
+	}
+
+	/**
+	 * The first interned instance of the id's collection
+	 */
+	Collection<?> objects(int id) {
+		return objects.get(id);
+	}
+
+	String category(int id) {
+		return categories.get(id);
+	}
+
+	/**
+	 * An id with the highest count (the one whose count changed last on ties),
+	 * or -1 if no count is positive
+	 */
+	int mostCommon() {
+		while(highest > 0 && heads[highest] < 0) {
+			highest--;
+		}
+		return highest > 0 ? heads[highest] : -1;
+	}
+
+	private void link(int id, int count) {
+		if(count >= heads.length) {
+			int length = heads.length;
+			heads = Arrays.copyOf(heads, Math.max(count + 1, length * 2));
+			Arrays.fill(heads, length, heads.length, -1);
+		}
+		int head = heads[count];
+		next[id] = head;
+		previous[id] = -1;
+		if(head >= 0) {
+			previous[head] = id;
+		}
+		heads[count] = id;
+		if(count > highest) {
+			highest = count;
+		}
+	}
+
+	private void unlink(int id, int count) {
+		if(previous[id] >= 0) {
+			next[previous[id]] = next[id];
+		} else {
+			heads[count] = next[id];
+		}
+		if(next[id] >= 0) {
+			previous[next[id]] = previous[id];
+		}
+	}
+
+	private static int[] filled(int length) {
+		int[] array = new int[length];
+		Arrays.fill(array, -1);
+		return array;
+	}
+
+	private int slot(Object key) {
+		int mask = keys.length - 1;
+		int slot = mix(System.identityHashCode(key)) & mask;
+		while(keys[slot] != null && keys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	private void register(int slot, Object key, int id) {
+		keys[slot] = key;
+		values[slot] = id;
+		if(++registered * 2 > keys.length) {
+			Object[] oldKeys = keys;
+			int[] oldValues = values;
+			keys = new Object[oldKeys.length * 2];
+			values = new int[oldKeys.length * 2];
+			for(int i = 0; i < oldKeys.length; i++) {
+				if(oldKeys[i] != null) {
+					int moved = slot(oldKeys[i]);
+					keys[moved] = oldKeys[i];
+					values[moved] = oldValues[i];
+				}
+			}
+		}
+	}
+
+	private static int mix(int hash) {
+		hash *= 0x9E3779B9;
+		return hash ^ (hash >>> 16);
+	}
+}
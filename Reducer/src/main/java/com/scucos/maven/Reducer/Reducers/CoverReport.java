@@ -0,0 +1,116 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.List;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * What CoverVerifier found when it compared a reduction's output to its input.
+ *
+ * Points are counted once per slice holding them: an input point missing from the output counts
+ * once for every input slice holding it, and an output point that no input holds once for every
+ * output slice holding it. The counts are exact for disjoint slices, and zero means zero either way.
+ * The example lists hold at most a few of the offending slices, to start debugging from.
+ *
+ * @param <T>
+ */
+public final class CoverReport<T> {
+
+	private final long inputVolume;
+	private final long outputVolume;
+	private final long overlappingPairs;
+	private final long missingPoints;
+	private final long extraPoints;
+	private final List<List<Slice<T>>> overlapExamples;
+	private final List<Slice<T>> missingExamples;
+	private final List<Slice<T>> extraExamples;
+
+	CoverReport(long inputVolume, long outputVolume, long overlappingPairs, long missingPoints, long extraPoints,
+			List<List<Slice<T>>> overlapExamples, List<Slice<T>> missingExamples, List<Slice<T>> extraExamples) {
+		this.inputVolume = inputVolume;
+		this.outputVolume = outputVolume;
+		this.overlappingPairs = overlappingPairs;
+		this.missingPoints = missingPoints;
+		this.extraPoints = extraPoints;
+		this.overlapExamples = overlapExamples;
+		this.missingExamples = missingExamples;
+		this.extraExamples = extraExamples;
+	}
+
+	/**
+	 * @return true if the output covers exactly the input points, each of them with exactly one slice
+	 */
+	public boolean isExact() {
+		return overlappingPairs == 0 && missingPoints == 0 && extraPoints == 0;
+	}
+
+	/**
+	 * The sum of the input slices volumes
+	 * @return
+	 */
+	public long getInputVolume() {
+		return inputVolume;
+	}
+
+	/**
+	 * The sum of the output slices volumes, the number of output points when they don't overlap
+	 * @return
+	 */
+	public long getOutputVolume() {
+		return outputVolume;
+	}
+
+	/**
+	 * The number of pairs of output slices holding a point in common
+	 * @return
+	 */
+	public long getOverlappingPairs() {
+		return overlappingPairs;
+	}
+
+	/**
+	 * The number of input points no output slice holds
+	 * @return
+	 */
+	public long getMissingPoints() {
+		return missingPoints;
+	}
+
+	/**
+	 * The number of output points no input slice holds
+	 * @return
+	 */
+	public long getExtraPoints() {
+		return extraPoints;
+	}
+
+	/**
+	 * Some of the overlapping output pairs, two slices each
+	 * @return
+	 */
+	public List<List<Slice<T>>> getOverlapExamples() {
+		return overlapExamples;
+	}
+
+	/**
+	 * Some of the input slices with points missing from the output
+	 * @return
+	 */
+	public List<Slice<T>> getMissingExamples() {
+		return missingExamples;
+	}
+
+	/**
+	 * Some of the output slices with points that aren't in the input
+	 * @return
+	 */
+	public List<Slice<T>> getExtraExamples() {
+		return extraExamples;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%s: %d input and %d output points, %d overlapping output pairs, %d points missing, %d points added",
+				isExact() ? "exact" : "not exact", inputVolume, outputVolume, overlappingPairs, missingPoints, extraPoints);
+	}
+}
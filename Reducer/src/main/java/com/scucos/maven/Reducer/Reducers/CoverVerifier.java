@@ -0,0 +1,533 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.ValueDictionary;
+
+/**
+ * Checks that a reduction's output covers exactly the points of its input, without expanding them.
+ *
+ * Every value is interned into a per-category ValueDictionary, so each slice becomes a sorted int
+ * array of ids per category, and the number of points two slices share is the product of the sizes
+ * of their per-category intersections. For every category an index from value id to the slices
+ * holding it (a bitmap for common values, a sorted array otherwise, like SliceIndex) gives the few
+ * slices of the other side a slice can intersect. Then:
+ * - output slices must not intersect each other,
+ * - as they are disjoint, the points the outputs hold of an input slice add up to exactly its
+ *   volume when none of them is missing,
+ * - and an output slice holds no extra point when the input slices intersecting it cover all of it.
+ *   A single input slice covers its share by volume, several are marked in a bitmap of the output
+ *   slice's points, since the input may overlap itself.
+ *
+ * Each output slice is checked as a separate task on the pool, and values are compared as sets,
+ * so a List holding a value twice still covers it once.
+ *
+ * say we check NewRecursiveReducer before rolling it out
+ * CoverReport<Region> report = new CoverVerifier<Region>().verify(new NewRecursiveReducer<Region>() {}, regions);
+ *
+ * Runtime complexity:
+ * Let v be the total number of values the input and output slices hold, c the number of candidate
+ * pairs the index finds (slices sharing a value in every category with few values) and P the
+ * number of input points. Encoding and indexing are O(v), checking the candidates O(c * d) for d
+ * categories, and marking O(P) bits plus O(volume / 64) words for every output slice intersecting
+ * more than one input slice. Memory is O(v) for the index and one output slice's bitmap per thread.
+ *
+ * @param <T>
+ */
+public class CoverVerifier<T> {
+
+	private static final int EXAMPLES = 10;
+
+	// Candidates are only filtered on categories where the slice holds at most this many values
+	private static final int FILTER_VALUES = 32;
+
+	private final ForkJoinPool pool;
+
+	/**
+	 * Verifies on the common pool
+	 */
+	public CoverVerifier() {
+		this(ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param pool the pool the slices are checked on
+	 */
+	public CoverVerifier(ForkJoinPool pool) {
+		this.pool = pool;
+	}
+
+	/**
+	 * Reduces the Ts with the reducer and verifies the reduced slices against the Ts
+	 * @param reducer
+	 * @param ts
+	 * @return
+	 */
+	public CoverReport<T> verify(Reducer<T> reducer, Set<T> ts) {
+		// Reducers change the slices they reduce in place, the input is sliced a second time to compare against
+		List<Slice<T>> inputs = ts
+				.stream()
+				.map(t -> reducer.toSlice(t))
+				.collect(Collectors.toList());
+		Set<Slice<T>> slices = ts
+				.stream()
+				.map(t -> reducer.toSlice(t))
+				.collect(Collectors.toSet());
+		return verify(inputs, reducer.reduceSlices(slices));
+	}
+
+	/**
+	 * @param inputs the slices before the reduction, they may overlap
+	 * @param outputs the reduced slices
+	 * @return
+	 * @throws ArithmeticException if an output slice intersecting several input slices has more than 2^37 points
+	 */
+	public CoverReport<T> verify(Collection<Slice<T>> inputs, Collection<Slice<T>> outputs) {
+		return pool.submit(() -> new Verification(inputs, outputs).run()).join();
+	}
+
+	/**
+	 * One verification, its parallel streams run on the pool it was submitted to
+	 */
+	private class Verification {
+		private final Map<String, Integer> categories = new HashMap<>();
+		private final List<ValueDictionary> dictionaries = new ArrayList<>();
+
+		private final List<Encoded<T>> inputs;
+		private final List<Encoded<T>> outputs;
+
+		private final List<List<Slice<T>>> overlapExamples = Collections.synchronizedList(new ArrayList<>());
+		private final List<Slice<T>> missingExamples = Collections.synchronizedList(new ArrayList<>());
+		private final List<Slice<T>> extraExamples = Collections.synchronizedList(new ArrayList<>());
+
+		Verification(Collection<Slice<T>> inputs, Collection<Slice<T>> outputs) {
+			for(Collection<Slice<T>> slices : Arrays.asList(inputs, outputs)) {
+				for(Slice<T> slice : slices) {
+					for(String category : slice.getCategories()) {
+						if(!categories.containsKey(category)) {
+							categories.put(category, categories.size());
+							dictionaries.add(new ValueDictionary());
+						}
+					}
+				}
+			}
+			this.inputs = encode(inputs);
+			this.outputs = encode(outputs);
+		}
+
+		CoverReport<T> run() {
+			Postings inputPostings = new Postings(inputs);
+			Postings outputPostings = new Postings(outputs);
+
+			long overlappingPairs = IntStream.range(0, outputs.size())
+					.parallel()
+					.mapToLong(o -> overlapsAfter(outputPostings, o))
+					.sum();
+
+			// The points of every input slice the outputs hold, counted once per output holding them
+			AtomicLongArray held = new AtomicLongArray(inputs.size());
+			long extraPoints = IntStream.range(0, outputs.size())
+					.parallel()
+					.mapToLong(o -> example(extraExamples, outputs.get(o), unheld(outputs.get(o), inputs, inputPostings, held)))
+					.sum();
+
+			long missingPoints;
+			if(overlappingPairs == 0) {
+				missingPoints = IntStream.range(0, inputs.size())
+						.parallel()
+						.mapToLong(i -> example(missingExamples, inputs.get(i), inputs.get(i).volume - held.get(i)))
+						.sum();
+			} else { // A point held by several outputs is counted several times, mark them instead
+				missingPoints = IntStream.range(0, inputs.size())
+						.parallel()
+						.mapToLong(i -> example(missingExamples, inputs.get(i), unheld(inputs.get(i), outputs, outputPostings, null)))
+						.sum();
+			}
+
+			return new CoverReport<>(volume(inputs), volume(outputs), overlappingPairs, missingPoints, extraPoints,
+					new ArrayList<>(overlapExamples), new ArrayList<>(missingExamples), new ArrayList<>(extraExamples));
+		}
+
+		private List<Encoded<T>> encode(Collection<Slice<T>> slices) {
+			return new ArrayList<>(slices)
+					.parallelStream()
+					.map(slice -> new Encoded<>(slice, categories, dictionaries))
+					.collect(Collectors.toList());
+		}
+
+		/**
+		 * The number of output slices after output o intersecting it
+		 */
+		private long overlapsAfter(Postings postings, int o) {
+			Encoded<T> slice = outputs.get(o);
+			long overlaps = 0;
+			for(int j : postings.candidates(slice)) {
+				if(j > o && intersection(slice, outputs.get(j)) > 0) {
+					overlaps++;
+					if(overlapExamples.size() < EXAMPLES) {
+						example(overlapExamples, Arrays.asList(slice.slice, outputs.get(j).slice));
+					}
+				}
+			}
+			return overlaps;
+		}
+
+		/**
+		 * The number of points of the slice none of the others hold
+		 * @param slice
+		 * @param others
+		 * @param postings the index of the others
+		 * @param held if not null, the points each of the others shares with the slice are added to it
+		 * @return
+		 */
+		private long unheld(Encoded<T> slice, List<Encoded<T>> others, Postings postings, AtomicLongArray held) {
+			if(slice.volume == 0) {
+				return 0;
+			}
+			List<Encoded<T>> intersecting = new ArrayList<>();
+			long shared = 0;
+			for(int j : postings.candidates(slice)) {
+				long points = intersection(slice, others.get(j));
+				if(points > 0) {
+					intersecting.add(others.get(j));
+					shared += points;
+					if(held != null) {
+						held.addAndGet(j, points);
+					}
+				}
+			}
+			if(intersecting.size() <= 1) {
+				return slice.volume - shared;
+			}
+			return slice.volume - marked(slice, intersecting);
+		}
+
+		/**
+		 * Marks the points of the slice each of the others holds, numbering them like an odometer
+		 * over the slice's ids, and counts the marks
+		 */
+		private long marked(Encoded<T> slice, List<Encoded<T>> others) {
+			int[] present = slice.present;
+			long[] strides = new long[present.length];
+			long stride = 1;
+			for(int k = present.length - 1; k >= 0; k--) {
+				strides[k] = stride;
+				stride *= slice.ids[present[k]].length;
+			}
+
+			long[] words = new long[Math.toIntExact((slice.volume + 63) >>> 6)];
+			int[][] positions = new int[present.length][];
+			int[] digits = new int[present.length];
+			for(Encoded<T> other : others) {
+				for(int k = 0; k < present.length; k++) {
+					positions[k] = sharedPositions(slice.ids[present[k]], other.ids[present[k]]);
+				}
+				Arrays.fill(digits, 0);
+				while(true) {
+					long point = 0;
+					for(int k = 0; k < present.length; k++) {
+						point += positions[k][digits[k]] * strides[k];
+					}
+					words[(int) (point >>> 6)] |= 1L << point;
+
+					int k = present.length - 1;
+					while(k >= 0 && ++digits[k] == positions[k].length) {
+						digits[k--] = 0;
+					}
+					if(k < 0) {
+						break;
+					}
+				}
+			}
+
+			long marked = 0;
+			for(long word : words) {
+				marked += Long.bitCount(word);
+			}
+			return marked;
+		}
+
+		private long volume(List<Encoded<T>> slices) {
+			long volume = 0;
+			for(Encoded<T> slice : slices) {
+				volume += slice.volume;
+			}
+			return volume;
+		}
+
+		/**
+		 * Records the slice as an example if it has any bad points and there is room for it
+		 * @return the number of bad points
+		 */
+		private long example(List<Slice<T>> examples, Encoded<T> slice, long bad) {
+			if(bad > 0) {
+				example(examples, slice.slice);
+			}
+			return bad;
+		}
+
+		private <E> void example(List<E> examples, E example) {
+			synchronized(examples) {
+				if(examples.size() < EXAMPLES) {
+					examples.add(example);
+				}
+			}
+		}
+
+		/**
+		 * For every category, the positions of the slices holding each value id
+		 */
+		private class Postings {
+			private final Posting[][] byCategory = new Posting[categories.size()][];
+
+			Postings(List<Encoded<T>> slices) {
+				for(int c = 0; c < byCategory.length; c++) {
+					int[] counts = new int[dictionaries.get(c).size()];
+					for(Encoded<T> slice : slices) {
+						if(slice.ids[c] != null) {
+							for(int id : slice.ids[c]) {
+								counts[id]++;
+							}
+						}
+					}
+					int[][] ids = new int[counts.length][];
+					for(int id = 0; id < counts.length; id++) {
+						ids[id] = new int[counts[id]];
+						counts[id] = 0;
+					}
+					for(int s = 0; s < slices.size(); s++) {
+						int[] sliceIds = slices.get(s).ids[c];
+						if(sliceIds != null) {
+							for(int id : sliceIds) {
+								ids[id][counts[id]++] = s;
+							}
+						}
+					}
+					byCategory[c] = new Posting[counts.length];
+					for(int id = 0; id < counts.length; id++) {
+						byCategory[c][id] = new Posting(ids[id], slices.size());
+					}
+				}
+			}
+
+			/**
+			 * Every slice that can intersect the slice: the slices holding one of its values in the
+			 * category with the fewest matches, less the ones holding none of its values in another
+			 * category it has few values in
+			 */
+			int[] candidates(Encoded<T> slice) {
+				int best = -1;
+				long fewest = Long.MAX_VALUE;
+				for(int c : slice.present) {
+					long matches = 0;
+					for(int id : slice.ids[c]) {
+						matches += byCategory[c][id].ids.length;
+					}
+					if(matches < fewest) {
+						fewest = matches;
+						best = c;
+					}
+				}
+				if(best < 0 || fewest == 0) {
+					return new int[0];
+				}
+
+				int[] candidates = new int[(int) fewest];
+				int size = 0;
+				for(int id : slice.ids[best]) {
+					int[] ids = byCategory[best][id].ids;
+					System.arraycopy(ids, 0, candidates, size, ids.length);
+					size += ids.length;
+				}
+				if(slice.ids[best].length > 1) {
+					size = unique(candidates, size).length;
+				}
+
+				int kept = 0;
+				for(int i = 0; i < size; i++) {
+					int j = candidates[i];
+					boolean keep = true;
+					for(int k = 0; k < slice.present.length && keep; k++) {
+						int c = slice.present[k];
+						if(c != best && slice.ids[c].length <= FILTER_VALUES) {
+							keep = false;
+							for(int id : slice.ids[c]) {
+								if(byCategory[c][id].contains(j)) {
+									keep = true;
+									break;
+								}
+							}
+						}
+					}
+					if(keep) {
+						candidates[kept++] = j;
+					}
+				}
+				return Arrays.copyOf(candidates, kept);
+			}
+		}
+	}
+
+	/**
+	 * The positions of the slices holding one value, in increasing order, with a bitmap of them
+	 * for values common enough to be tested often
+	 */
+	private static class Posting {
+		private final int[] ids;
+		private final long[] bits;
+
+		/**
+		 * Values held by more than 1 in 32 slices are cheaper to test as a bitmap
+		 */
+		Posting(int[] ids, int sliceCount) {
+			this.ids = ids;
+			if(ids.length > 1 && ids.length * 32L >= sliceCount) {
+				this.bits = new long[(sliceCount + 63) >>> 6];
+				for(int id : ids) {
+					bits[id >>> 6] |= 1L << id;
+				}
+			} else {
+				this.bits = null;
+			}
+		}
+
+		boolean contains(int id) {
+			if(bits != null) {
+				return (bits[id >>> 6] & (1L << id)) != 0;
+			}
+			return Arrays.binarySearch(ids, id) >= 0;
+		}
+	}
+
+	/**
+	 * The number of points both slices hold, slices with different categories share none
+	 */
+	private static long intersection(Encoded<?> a, Encoded<?> b) {
+		if(a.present.length != b.present.length) {
+			return 0;
+		}
+		long shared = 1;
+		for(int c : a.present) {
+			if(b.ids[c] == null) {
+				return 0;
+			}
+			int size = intersectionSize(a.ids[c], b.ids[c]);
+			if(size == 0) {
+				return 0;
+			}
+			shared = Math.multiplyExact(shared, size);
+		}
+		return shared;
+	}
+
+	/**
+	 * Merges two sorted id arrays, or binary searches the smaller in the larger when it is much smaller
+	 */
+	private static int intersectionSize(int[] a, int[] b) {
+		if(a.length > b.length) {
+			int[] swap = a;
+			a = b;
+			b = swap;
+		}
+		int size = 0;
+		if(a.length * 16L < b.length) {
+			for(int id : a) {
+				if(Arrays.binarySearch(b, id) >= 0) {
+					size++;
+				}
+			}
+			return size;
+		}
+		for(int i = 0, j = 0; i < a.length && j < b.length;) {
+			if(a[i] < b[j]) {
+				i++;
+			} else if(a[i] > b[j]) {
+				j++;
+			} else {
+				size++;
+				i++;
+				j++;
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * The positions in ids of the ids the other slice holds too
+	 */
+	private static int[] sharedPositions(int[] ids, int[] other) {
+		int[] positions = new int[Math.min(ids.length, other.length)];
+		int size = 0;
+		for(int i = 0, j = 0; i < ids.length && j < other.length;) {
+			if(ids[i] < other[j]) {
+				i++;
+			} else if(ids[i] > other[j]) {
+				j++;
+			} else {
+				positions[size++] = i;
+				i++;
+				j++;
+			}
+		}
+		return (size == positions.length) ? positions : Arrays.copyOf(positions, size);
+	}
+
+	/**
+	 * Sorts the first size ids and drops the duplicates
+	 */
+	private static int[] unique(int[] ids, int size) {
+		Arrays.sort(ids, 0, size);
+		int unique = 0;
+		for(int i = 0; i < size; i++) {
+			if(unique == 0 || ids[i] != ids[unique - 1]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		return (unique == ids.length) ? ids : Arrays.copyOf(ids, unique);
+	}
+
+	/**
+	 * A slice as the sorted ids of its values, by category index, null for categories it doesn't have
+	 */
+	private static final class Encoded<T> {
+		final Slice<T> slice;
+		final int[][] ids;
+		final int[] present; // The indexes of the categories it has, in increasing order
+		final long volume;
+
+		Encoded(Slice<T> slice, Map<String, Integer> categories, List<ValueDictionary> dictionaries) {
+			this.slice = slice;
+			this.ids = new int[categories.size()][];
+			this.present = new int[slice.getWidth()];
+			int width = 0;
+			long volume = 1;
+			for(String category : slice.getCategories()) {
+				int c = categories.get(category);
+				ValueDictionary dictionary = dictionaries.get(c);
+				Collection<?> objects = slice.getEntry(category);
+				int[] encoded = new int[objects.size()];
+				int size = 0;
+				for(Object object : objects) {
+					encoded[size++] = dictionary.intern(object);
+				}
+				ids[c] = unique(encoded, size);
+				present[width++] = c;
+				volume = Math.multiplyExact(volume, ids[c].length);
+			}
+			Arrays.sort(present);
+			this.volume = volume;
+		}
+	}
+}
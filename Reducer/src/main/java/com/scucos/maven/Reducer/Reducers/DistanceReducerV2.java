@@ -15,7 +15,7 @@ import com.scucos.maven.Reducer.Slice;
  * Runtime complexity:
  * Let n be the number of input slices, d be the number of categories per slice,
  * c be the maximum collection size stored in a category entry, and p be the
- * number of recursive passes until the result stops shrinking. Each pass does
+ * number of passes until the result stops shrinking. Each pass does
  * O(n^2) pairwise comparisons in the worst case. Each difference check scans
  * d categories and may call containsAll on category collections, so each pair
  * costs O(d * c) for bounded collection implementations. Expected worst-case
@@ -29,42 +29,69 @@ public abstract class DistanceReducerV2<T> implements Reducer<T> {
 
 	@Override
 	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
-		Set<Slice<T>> reduced = new HashSet<>();
-		int startSize = slices.size();
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
+	
+	/**
+	 * Checks the budget before every head, once it runs out the slices that
+	 * were not compared against a head yet are returned as they are
+	 */
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		ReductionListener listener = getListener();
+		
+		// One pass per iteration, until a pass doesn't shrink the slices
+		while(true) {
+			Set<Slice<T>> reduced = new HashSet<>();
+			int startSize = slices.size();
 		
-		while(slices.size() > 0) {
-			Slice<T> head = slices.stream().iterator().next();
-			slices.remove(head);
+			while(slices.size() > 0) {
+				if(tracker.exhausted()) {
+					reduced.addAll(slices);
+					return reduced;
+				}
+			
+				Slice<T> head = slices.stream().iterator().next();
+				slices.remove(head);
 			
-			Set<Slice<T>> leftOver = new HashSet<>();
-			for(Slice<T> slice : slices) {
-				Tuple<Integer, Integer> diffTuple = difference(head, slice);
-				int headIntoSlice = diffTuple.o1;
-				int sliceIntoHead = diffTuple.o2;
+				Set<Slice<T>> leftOver = new HashSet<>();
+				for(Slice<T> slice : slices) {
+					Tuple<Integer, Integer> diffTuple = difference(head, slice);
+					int headIntoSlice = diffTuple.o1;
+					int sliceIntoHead = diffTuple.o2;
 				
-				if(headIntoSlice == 0 && sliceIntoHead == 1) {
-					//Slice is completely contained by head
-					//We can ignore it
-				} else if (headIntoSlice == 1 && sliceIntoHead == 0) {
-					//Head is contained completely by slice
-					//Replace head with slice?
-					head = slice;
-				} else if (headIntoSlice == 1 && sliceIntoHead == 1) {
-					//They differ in one spot exactly
-					head = mergeInto(slice, head);
-				} else {
-					leftOver.add(slice);
+					if(headIntoSlice == 0 && sliceIntoHead == 1) {
+						//Slice is completely contained by head
+						//We can ignore it
+						listener.onContainmentDrop(1);
+						tracker.removed(1);
+					} else if (headIntoSlice == 1 && sliceIntoHead == 0) {
+						//Head is contained completely by slice
+						//Replace head with slice?
+						head = slice;
+						listener.onContainmentDrop(1);
+						tracker.removed(1);
+					} else if (headIntoSlice == 1 && sliceIntoHead == 1) {
+						//They differ in one spot exactly
+						head = mergeInto(slice, head);
+						listener.onMerge(1);
+						tracker.removed(1);
+					} else {
+						leftOver.add(slice);
+					}
 				}
+				tracker.compare(slices.size());
+				reduced.add(head);
+				slices = leftOver;
 			}
-			reduced.add(head);
-			slices = leftOver;
-		}
-
-		if(reduced.size() < startSize) {
-			return reduceSlices(reduced);
+			
+			listener.onPass(startSize, reduced.size());
+			tracker.pass();
+			if(reduced.size() == startSize) {
+				return reduced;
+			}
+			slices = reduced;
 		}
-		
-		return reduced;
 	}
 	
 	public class Tuple<T1,T2> {
@@ -96,13 +123,21 @@ public abstract class DistanceReducerV2<T> implements Reducer<T> {
 		return new Tuple<Integer, Integer>(S1IntoS2, S2IntoS1);
 	}
 	
-	@SuppressWarnings("unchecked")
+	/**
+	 * Adds the objects of s2 to s1 in every category. The collections that grow are copied first,
+	 * since they may belong to the input objects or be shared with other slices.
+	 * @param s1
+	 * @param s2
+	 * @return s1
+	 */
 	public Slice<T> mergeInto(Slice<T> s1, Slice<T> s2) {
 		Set<String> categories = s1.getCategories();
-		for(Object category : categories) {
-			Collection<Object> e1 = (Collection<Object>) s1.getEntry(category);
-			Collection<Object> e2 = (Collection<Object>) s2.getEntry(category);
-			e1.addAll(e2);
+		for(String category : categories) {
+			Collection<?> e2 = s2.getEntry(category);
+			if(!s1.getEntry(category).containsAll(e2)) {
+				s1.detachEntry(category);
+				s1.addObjects(category, e2);
+			}
 		}
 		return s1;
 	}
@@ -0,0 +1,442 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.SliceDictionary;
+
+/**
+ * Reduces inputs that don't fit in the heap as Slice objects, streaming them from an Iterator<T>
+ * or Stream<T> and spilling them to local disk in sorted runs.
+ *
+ * Every input point is encoded as one int id per category through a SliceDictionary, so a point
+ * costs d ints instead of a Slice, d collections and their boxed values. Points are buffered into
+ * runs of runSize points, each run is sorted lexicographically (the category with the fewest
+ * distinct values first) and written to a temporary file. The runs are then merged back in sorted
+ * order, dropping duplicate points, and cut into partitions of partitionSize consecutive points.
+ * Consecutive points in that order share their leading categories, so each partition is a compact
+ * region of the space, which is decoded into point slices and reduced by the delegate on its own.
+ * The partition results are finally merged with their distance-1 neighbours, first along the
+ * leading category and then along all of them until nothing merges.
+ *
+ * Runtime complexity:
+ * Let n be the number of input points, d the number of categories, r = n / runSize the number of
+ * runs and R(m) the delegate's cost on m slices. Encoding is O(n * d), sorting the runs is
+ * O(n * d * log(runSize)) and merging them O(n * d * log(r)), with O(n * d) ints written and read
+ * back once. Reducing costs (n / partitionSize) * R(partitionSize), plus the final merge of the
+ * reduced slices (see SliceNeighborIndex).
+ * Heap usage is O(min(n, runSize) * d) ints for the run being built, O(partitionSize) slices for the
+ * partition being reduced, the dictionary of distinct values and the reduced result, which
+ * has to fit in memory.
+ *
+ * Only point inputs (one value per category) are supported, the delegate's toSlice and fromSlice
+ * are used to convert them.
+ *
+ * @param <T>
+ */
+public class ExternalReducer<T> {
+
+	public static final int DEFAULT_RUN_SIZE = 1 << 20;
+	public static final int DEFAULT_PARTITION_SIZE = 1 << 16;
+
+	// The run buffer starts with room for this many points and doubles up to runSize
+	private static final int INITIAL_RUN_CAPACITY = 1 << 10;
+
+	private final Reducer<T> delegate;
+	private final Path spillDirectory;
+	private final int runSize;
+	private final int partitionSize;
+
+	/**
+	 * Spills to java.io.tmpdir with the default run and partition sizes
+	 * @param delegate
+	 */
+	public ExternalReducer(Reducer<T> delegate) {
+		this(delegate, Paths.get(System.getProperty("java.io.tmpdir")), DEFAULT_RUN_SIZE, DEFAULT_PARTITION_SIZE);
+	}
+
+	/**
+	 * @param delegate the reducer run on each partition, also used to convert Ts to and from slices
+	 * @param spillDirectory where the sorted runs are written, they are deleted once the reduction finishes
+	 * @param runSize the number of points sorted in memory before they are spilled
+	 * @param partitionSize the number of points handed to the delegate at a time
+	 */
+	public ExternalReducer(Reducer<T> delegate, Path spillDirectory, int runSize, int partitionSize) {
+		if(runSize < 1 || partitionSize < 1) {
+			throw new IllegalArgumentException("Run and partition sizes must be positive, got " + runSize + " and " + partitionSize);
+		}
+		this.delegate = delegate;
+		this.spillDirectory = spillDirectory;
+		this.runSize = runSize;
+		this.partitionSize = partitionSize;
+	}
+
+	public Set<T> reduce(Stream<T> ts) {
+		return reduce(ts.iterator());
+	}
+
+	public Set<T> reduce(Iterator<T> ts) {
+		return reduceSlices(ts)
+				.stream()
+				.map(s -> delegate.fromSlice(s))
+				.collect(Collectors.toSet());
+	}
+
+	/**
+	 * Reduces the points without converting the result back into Ts
+	 * @param ts
+	 * @return
+	 * @throws UncheckedIOException if the runs can't be written or read back whole
+	 * @throws ArithmeticException if a run of runSize points takes more than Integer.MAX_VALUE ints
+	 */
+	public Set<Slice<T>> reduceSlices(Iterator<T> ts) {
+		List<Path> runs = new ArrayList<>();
+		try {
+			return reduceSlices(ts, runs);
+		} catch(IOException e) {
+			throw new UncheckedIOException(e);
+		} finally {
+			for(Path run : runs) {
+				try {
+					Files.deleteIfExists(run);
+				} catch(IOException e) {
+					// Best effort, the run is in a temporary directory
+				}
+			}
+		}
+	}
+
+	private Set<Slice<T>> reduceSlices(Iterator<T> ts, List<Path> runs) throws IOException {
+		if(!ts.hasNext()) {
+			return new HashSet<>();
+		}
+
+		SliceDictionary dictionary = new SliceDictionary();
+		Slice<T> template = delegate.toSlice(ts.next());
+		List<String> categories = new ArrayList<>(template.getCategories());
+		int width = categories.size();
+
+		// Grown as points come in, so small inputs never allocate a whole run
+		int[] buffer = new int[Math.multiplyExact(Math.min(runSize, INITIAL_RUN_CAPACITY), width)];
+		int buffered = 0;
+		RecordOrder order = null;
+
+		Slice<T> next = template;
+		while(next != null) {
+			int offset = buffered * width;
+			if(offset == buffer.length && width > 0) {
+				buffer = Arrays.copyOf(buffer, Math.multiplyExact((int) Math.min(runSize, buffered * 2L), width));
+			}
+			for(int c = 0; c < width; c++) {
+				Collection<?> objects = next.getEntry(categories.get(c));
+				if(objects == null || objects.size() != 1) {
+					throw new IllegalArgumentException("Only points (one value per category) can be reduced externally, got " + next);
+				}
+				buffer[offset + c] = dictionary.forCategory(categories.get(c)).intern(objects.iterator().next());
+			}
+			buffered += 1;
+			next = ts.hasNext() ? delegate.toSlice(ts.next()) : null;
+
+			if(buffered == runSize || next == null) {
+				if(order == null) {
+					// The first run is the sample the sort order is picked from
+					order = RecordOrder.fewestDistinctFirst(buffer, buffered, width);
+				}
+				int[] sorted = order.sort(buffer, buffered);
+				if(next == null && runs.isEmpty()) {
+					// Everything fit in one run, no need to touch the disk
+					return reducePartitions(new BufferSource(buffer, sorted, width), order, template, categories, dictionary);
+				}
+				spill(buffer, sorted, width, runs);
+				buffered = 0;
+			}
+		}
+
+		List<RunSource> sources = new ArrayList<>(runs.size());
+		try {
+			for(Path run : runs) {
+				sources.add(new RunSource(run, width));
+			}
+			return reducePartitions(new MergeSource(sources, order), order, template, categories, dictionary);
+		} finally {
+			for(RunSource source : sources) {
+				source.close();
+			}
+		}
+	}
+
+	/**
+	 * Cuts the sorted, distinct points into partitions, reduces each one with the delegate and merges the results
+	 */
+	private Set<Slice<T>> reducePartitions(RecordSource source, RecordOrder order, Slice<T> template, List<String> categories, SliceDictionary dictionary) throws IOException {
+		int width = categories.size();
+		int[] record = new int[width];
+		int[] previous = null;
+
+		List<Slice<T>> reduced = new ArrayList<>();
+		Set<Slice<T>> partition = new HashSet<>();
+		while(source.next(record)) {
+			if(previous != null && Arrays.equals(previous, record)) {
+				continue; // Duplicate point
+			}
+			if(previous == null) {
+				previous = new int[width];
+			}
+			System.arraycopy(record, 0, previous, 0, width);
+
+			Slice<T> point = template.copy();
+			for(int c = 0; c < width; c++) {
+				String category = categories.get(c);
+				Set<Object> objects = new HashSet<>();
+				objects.add(dictionary.forCategory(category).valueOf(record[c]));
+				point.addEntry(category, objects);
+			}
+			partition.add(point);
+
+			if(partition.size() == partitionSize) {
+				reduced.addAll(delegate.reduceSlices(partition));
+				partition = new HashSet<>();
+			}
+		}
+		if(!partition.isEmpty()) {
+			reduced.addAll(delegate.reduceSlices(partition));
+		}
+
+		SliceNeighborIndex<T> index = new SliceNeighborIndex<>(reduced, delegate.getListener());
+		index.mergeAlong(categories.get(order.leading()));
+		index.mergeUntilFixpoint();
+		return new HashSet<>(index.getSlices());
+	}
+
+	/**
+	 * Writes the number of sorted records, then the records, to a new run file. The file is added
+	 * to runs before anything is written so that a failed write (a full disk) still leaves the
+	 * file for the caller to delete.
+	 */
+	private void spill(int[] buffer, int[] sorted, int width, List<Path> runs) throws IOException {
+		Path run = Files.createTempFile(spillDirectory, "reducer-run", ".bin");
+		runs.add(run);
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+			out.writeInt(sorted.length);
+			for(int record : sorted) {
+				int offset = record * width;
+				for(int c = 0; c < width; c++) {
+					out.writeInt(buffer[offset + c]);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Lexicographic order over encoded points, comparing the categories in a fixed order
+	 */
+	static class RecordOrder {
+		private final int[] columns;
+
+		RecordOrder(int[] columns) {
+			this.columns = columns;
+		}
+
+		/**
+		 * Orders the categories by how many distinct values they have in the sample, fewest first
+		 */
+		static RecordOrder fewestDistinctFirst(int[] buffer, int count, int width) {
+			int[] distinct = new int[width];
+			for(int c = 0; c < width; c++) {
+				Set<Integer> values = new HashSet<>();
+				for(int i = 0; i < count; i++) {
+					values.add(buffer[i * width + c]);
+				}
+				distinct[c] = values.size();
+			}
+
+			List<Integer> columns = new ArrayList<>();
+			for(int c = 0; c < width; c++) {
+				columns.add(c);
+			}
+			Collections.sort(columns, (a, b) -> Integer.compare(distinct[a], distinct[b]));
+			return new RecordOrder(columns.stream().mapToInt(Integer::intValue).toArray());
+		}
+
+		/**
+		 * The category the points are sorted on first
+		 */
+		int leading() {
+			return columns[0];
+		}
+
+		int compare(int[] a, int aOffset, int[] b, int bOffset) {
+			for(int column : columns) {
+				int compared = Integer.compare(a[aOffset + column], b[bOffset + column]);
+				if(compared != 0) {
+					return compared;
+				}
+			}
+			return 0;
+		}
+
+		/**
+		 * Sorts the first count records of the buffer with a bottom-up merge sort on their indices
+		 * @return the record indices in sorted order
+		 */
+		int[] sort(int[] buffer, int count) {
+			int width = columns.length;
+			int[] indices = new int[count];
+			for(int i = 0; i < count; i++) {
+				indices[i] = i;
+			}
+			int[] scratch = new int[count];
+
+			for(int run = 1; run < count; run *= 2) {
+				for(int low = 0; low < count - run; low += 2 * run) {
+					int middle = low + run;
+					int high = Math.min(low + 2 * run, count);
+					int left = low;
+					int right = middle;
+					int out = low;
+					while(left < middle && right < high) {
+						scratch[out++] = (compare(buffer, indices[right] * width, buffer, indices[left] * width) < 0) ? indices[right++] : indices[left++];
+					}
+					while(left < middle) {
+						scratch[out++] = indices[left++];
+					}
+					while(right < high) {
+						scratch[out++] = indices[right++];
+					}
+					System.arraycopy(scratch, low, indices, low, high - low);
+				}
+			}
+			return indices;
+		}
+	}
+
+	/**
+	 * Produces encoded points in sorted order
+	 */
+	private interface RecordSource {
+		/**
+		 * Copies the next point into record
+		 * @return false once there are no points left
+		 */
+		boolean next(int[] record) throws IOException;
+	}
+
+	/**
+	 * The single in-memory run, when the input never had to be spilled
+	 */
+	private static class BufferSource implements RecordSource {
+		private final int[] buffer;
+		private final int[] sorted;
+		private final int width;
+		private int position = 0;
+
+		BufferSource(int[] buffer, int[] sorted, int width) {
+			this.buffer = buffer;
+			this.sorted = sorted;
+			this.width = width;
+		}
+
+		@Override
+		public boolean next(int[] record) {
+			if(position == sorted.length) {
+				return false;
+			}
+			System.arraycopy(buffer, sorted[position++] * width, record, 0, width);
+			return true;
+		}
+	}
+
+	/**
+	 * Reads one spilled run back, holding its current point.
+	 * A run that ends before the number of points written at its start throws an EOFException,
+	 * points are never silently dropped from a truncated run.
+	 */
+	private static class RunSource implements RecordSource {
+		private final DataInputStream in;
+		private final int[] current;
+		private int remaining;
+
+		RunSource(Path run, int width) throws IOException {
+			this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+			this.current = new int[width];
+			try {
+				this.remaining = in.readInt();
+			} catch(IOException e) {
+				in.close();
+				throw e;
+			}
+		}
+
+		@Override
+		public boolean next(int[] record) throws IOException {
+			if(remaining == 0) {
+				return false;
+			}
+			for(int c = 0; c < record.length; c++) {
+				record[c] = in.readInt();
+			}
+			remaining--;
+			return true;
+		}
+
+		/**
+		 * Moves to the run's next point
+		 * @return false once the run is exhausted
+		 */
+		boolean advance() throws IOException {
+			return next(current);
+		}
+
+		void close() throws IOException {
+			in.close();
+		}
+	}
+
+	/**
+	 * K-way merge of the spilled runs, always handing out the smallest current point
+	 */
+	private static class MergeSource implements RecordSource {
+		private final PriorityQueue<RunSource> heads;
+
+		MergeSource(List<RunSource> runs, RecordOrder order) throws IOException {
+			this.heads = new PriorityQueue<>(Math.max(1, runs.size()), (a, b) -> order.compare(a.current, 0, b.current, 0));
+			for(RunSource run : runs) {
+				if(run.advance()) {
+					heads.add(run);
+				}
+			}
+		}
+
+		@Override
+		public boolean next(int[] record) throws IOException {
+			RunSource smallest = heads.poll();
+			if(smallest == null) {
+				return false;
+			}
+			System.arraycopy(smallest.current, 0, record, 0, record.length);
+			if(smallest.advance()) {
+				heads.add(smallest);
+			}
+			return true;
+		}
+	}
+}
@@ -1,47 +1,157 @@
 package com.scucos.maven.Reducer.Reducers;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.stream.Collectors;
 
 import com.scucos.maven.Reducer.Slice;
 
+/**
+ * Reducer that works on the graph of slices where edges are drawn between slices which have distance = 1,
+ * and reduces the cliques and closed cycles in it.
+ *
+ * say we have 4 slices like this
+ * 1 = [1,A] 2 = [1,B] 3 = [2,A] 4 = [2,B]
+ *
+ * 1-2 and 3-4 are distance-1 along the second category, 1-3 and 2-4 along the first, so the
+ * graph is the cycle 1-2-4-3-1. Merging the cliques along the second category gives [1,AB] and
+ * [2,AB], which are now distance-1 along the first category and merge into the single slice [12,AB].
+ *
+ * The graph is never stored as an adjacency matrix. All the slices that are distance-1 along a
+ * category c share the same "all categories except c" signature, so the edges along c are exactly the
+ * cliques formed by the signature buckets of c. Bucketing every slice once per category gives the
+ * connected components through union-find, and the cliques of a component are merged without ever
+ * materialising its edges. Components share no edges, so they are reduced in parallel, each one by
+ * repeatedly merging the cliques of whichever category removes the most slices.
+ *
+ * Merges inside one component can create edges to another component when the input slices are not
+ * point-slices, so the whole process repeats on the reduced slices until a round merges nothing.
+ *
+ * Runtime complexity:
+ * Let n be the number of input slices, d be the number of categories per slice and r the number
+ * of rounds (usually 2: one that merges and one that proves the fixpoint). Building the components
+ * is O(n * d) signature hashing and O(n * alpha(n)) union-find work per round. Reducing a component
+ * of size m costs O(s * m * d^2), where s is the number of clique merges picked for it.
+ * Space usage is O(n) for the union-find arrays and one category's buckets at a time,
+ * so 10^6 slice inputs do not need the O(n^2) matrix.
+ */
 public abstract class GraphDistanceReducer<T> implements Reducer<T> {
 
 	@Override
 	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
-		// TODO Auto-generated method stub
-		
-		//Work on reducing closed cycles in graph of slices where edges are drawn between slices which have distance = 1
-		
-		
-		//the graph can be represented as a matrix like so:
-		
-		/*
-		 * say we have 4 slices like this
-		 * 1 = [1,A] 2 = [1,B] 3 = [2,A] 4 = [2,C]
-		 * 
-		 * which yield this graph, where 1 represents an edge, and x represents no edge
-		 * We only need to fill in the top half (minus the diagonal) because the graph is
-		 * bidirectional and so the other half would just be the mirror of the first half
-		 * 
-		 *   1  2  3  4
-		 * 1 x  1  1  x
-		 * 2 ---x  1  x
-		 * 3 ------x  1
-		 * 4 ---------x
-		 */
-		
-		
-		
-		
-		
-		
-		
-		
-		
-		
-		
-		
-		
-		return null;
-	}	
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
+
+	/**
+	 * Stops between rounds, or between the clique merges of each component, once the budget runs out
+	 */
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		List<Slice<T>> nodes = new ArrayList<>(slices);
+		if(nodes.size() <= 1) {
+			return new HashSet<>(nodes);
+		}
+
+		List<String> categories = new ArrayList<>(nodes.get(0).getCategories());
+
+		while(!tracker.exhausted()) {
+			List<List<Slice<T>>> components = components(nodes, categories);
+			int before = nodes.size();
+
+			nodes = components
+					.parallelStream()
+					.flatMap(component -> reduceComponent(component, tracker).stream())
+					.collect(Collectors.toList());
+
+			getListener().onPass(before, nodes.size());
+			tracker.pass();
+			if(nodes.size() == before) {
+				break;
+			}
+		}
+		return new HashSet<>(nodes);
+	}
+
+	/**
+	 * Groups the slices into the connected components of the distance-1 graph.
+	 * Slices with no edges come back as single slice components.
+	 * @param nodes
+	 * @param categories
+	 * @return
+	 */
+	List<List<Slice<T>>> components(List<Slice<T>> nodes, List<String> categories) {
+		int[] parents = new int[nodes.size()];
+		for(int i = 0; i < parents.length; i++) {
+			parents[i] = i;
+		}
+
+		for(String category : categories) {
+			Map<SliceSignature, Integer> cliques = new HashMap<>();
+			for(int i = 0; i < nodes.size(); i++) {
+				Integer first = cliques.putIfAbsent(SliceSignature.without(nodes.get(i), categories, category), i);
+				if(first != null) {
+					union(parents, first, i);
+				}
+			}
+		}
+
+		Map<Integer, List<Slice<T>>> components = new HashMap<>();
+		for(int i = 0; i < nodes.size(); i++) {
+			components.computeIfAbsent(find(parents, i), root -> new ArrayList<>()).add(nodes.get(i));
+		}
+		return new ArrayList<>(components.values());
+	}
+
+	/**
+	 * Merges the cliques of one connected component, always picking the category that removes the most slices next
+	 * @param component
+	 * @param tracker
+	 * @return
+	 */
+	Collection<Slice<T>> reduceComponent(List<Slice<T>> component, ReductionBudget.Tracker tracker) {
+		if(component.size() == 1) {
+			return component;
+		}
+
+		SliceNeighborIndex<T> index = new SliceNeighborIndex<>(component, getListener(), tracker);
+		while(!tracker.exhausted()) {
+			String bestCategory = null;
+			int bestMerges = 0;
+
+			for(String category : index.getCategories()) {
+				int merges = index.countMergesAlong(category);
+				if(merges > bestMerges) {
+					bestMerges = merges;
+					bestCategory = category;
+				}
+			}
+
+			if(bestCategory == null) {
+				return index.getSlices();
+			}
+			index.mergeAlong(bestCategory);
+		}
+		return index.getSlices();
+	}
+
+	private static int find(int[] parents, int node) {
+		while(parents[node] != node) {
+			parents[node] = parents[parents[node]];
+			node = parents[node];
+		}
+		return node;
+	}
+
+	private static void union(int[] parents, int a, int b) {
+		int rootA = find(parents, a);
+		int rootB = find(parents, b);
+		if(rootA != rootB) {
+			parents[Math.max(rootA, rootB)] = Math.min(rootA, rootB);
+		}
+	}
 }
@@ -0,0 +1,284 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Keeps a reduced Set<Slice<T>> up to date under point inserts and deletes,
+ * instead of reducing the whole data set again after every change.
+ *
+ * Two indexes are kept over the current slices:
+ * 	1) per category c, the slices by their "all categories except c" signature. Every slice
+ * 	   sharing a signature with another one is distance-1 from it along c, so a new slice is
+ * 	   merged with such a neighbour straight away, and the merged slice is looked up again
+ * 	   in case it now has neighbours of its own.
+ * 	2) per category, the slices holding each value, used to find the slice containing a point.
+ *
+ * An insert therefore only touches the inserted point's neighbours, and a delete only splits the
+ * slice containing the point into at most d slices covering the rest of it (the split pieces are
+ * re-inserted and merge with their neighbours when possible).
+ *
+ * Runtime complexity:
+ * Let d be the number of categories and w the size of the collections being merged or split.
+ * An insert costs O(d) signature lookups per merge in the cascade, plus O(w) to copy and
+ * re-index the merged collections. A delete costs one point lookup (intersecting the value
+ * postings of the point, starting from the smallest) plus d inserts for the pieces.
+ * Space usage is O(r * d) signatures plus the postings, for r slices.
+ *
+ * Inserted and deleted objects must be points (one value per category), and the current slices
+ * never overlap. The reducer is not thread-safe, callers need to synchronize on it.
+ *
+ * @param <T>
+ */
+public class IncrementalReducer<T> {
+
+	private final Reducer<T> reducer;
+
+	private List<String> categories;
+
+	private final Set<Slice<T>> slices = Collections.newSetFromMap(new IdentityHashMap<>());
+
+	private final Map<String, Map<SliceSignature, Slice<T>>> neighbours = new HashMap<>();
+
+	private final Map<String, Map<Object, Set<Slice<T>>>> postings = new HashMap<>();
+
+	/**
+	 * Starts from an empty set
+	 * @param reducer used to convert Ts to and from slices
+	 */
+	public IncrementalReducer(Reducer<T> reducer) {
+		this.reducer = reducer;
+	}
+
+	/**
+	 * Starts from the given set, reduced once with the reducer
+	 * @param reducer used for the initial reduction and to convert Ts to and from slices
+	 * @param ts
+	 */
+	public IncrementalReducer(Reducer<T> reducer, Set<T> ts) {
+		this(reducer);
+
+		Set<Slice<T>> initial = ts
+				.stream()
+				.map(t -> reducer.toSlice(t))
+				.collect(Collectors.toSet());
+
+		for(Slice<T> slice : reducer.reduceSlices(initial)) {
+			insert(slice);
+		}
+	}
+
+	/**
+	 * Adds a point, merging it with its neighbouring slices
+	 * @param t
+	 * @return true if the point was not already covered
+	 */
+	public boolean add(T t) {
+		Slice<T> point = toPoint(t);
+		if(find(point) != null) {
+			return false;
+		}
+
+		insert(point);
+		return true;
+	}
+
+	/**
+	 * Removes a point, splitting the slice that contains it
+	 * @param t
+	 * @return true if the point was covered
+	 */
+	public boolean remove(T t) {
+		Slice<T> point = toPoint(t);
+		Slice<T> containing = find(point);
+		if(containing == null) {
+			return false;
+		}
+
+		unregister(containing);
+		for(Slice<T> piece : split(containing, point)) {
+			insert(piece);
+		}
+		return true;
+	}
+
+	/**
+	 * @param t
+	 * @return true if the point is covered by one of the slices
+	 */
+	public boolean contains(T t) {
+		return find(toPoint(t)) != null;
+	}
+
+	/**
+	 * The current reduced slices, the view must not be modified
+	 * @return
+	 */
+	public Set<Slice<T>> getSlices() {
+		return Collections.unmodifiableSet(slices);
+	}
+
+	/**
+	 * The current reduced slices converted back into Ts.
+	 * The Ts share their collections with the slices, so they must not be modified either.
+	 * @return
+	 */
+	public Set<T> getReduced() {
+		return slices
+				.stream()
+				.map(s -> reducer.fromSlice(s))
+				.collect(Collectors.toSet());
+	}
+
+	private Slice<T> toPoint(T t) {
+		Slice<T> point = reducer.toSlice(t);
+		if(categories == null) {
+			categories = new ArrayList<>(point.getCategories());
+		}
+
+		for(String category : categories) {
+			Collection<?> objects = point.getEntry(category);
+			if(objects == null || objects.size() != 1) {
+				throw new IllegalArgumentException("Only points (one value per category) can be added or removed, got " + point);
+			}
+		}
+		return point;
+	}
+
+	/**
+	 * Finds the slice containing the given point by intersecting the postings of its values
+	 */
+	private Slice<T> find(Slice<T> point) {
+		if(slices.isEmpty()) {
+			return null;
+		}
+
+		Set<Slice<T>> smallest = null;
+		for(String category : categories) {
+			Set<Slice<T>> candidates = postings(category).get(value(point, category));
+			if(candidates == null) {
+				return null;
+			}
+			if(smallest == null || candidates.size() < smallest.size()) {
+				smallest = candidates;
+			}
+		}
+
+		for(Slice<T> candidate : smallest) {
+			if(point.containedIn(candidate)) {
+				return candidate;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Adds a slice, merging it with any distance-1 neighbour and repeating for the merged slice
+	 */
+	private void insert(Slice<T> slice) {
+		if(categories == null) {
+			categories = new ArrayList<>(slice.getCategories());
+		}
+
+		Deque<Slice<T>> pending = new ArrayDeque<>();
+		pending.push(slice);
+
+		while(!pending.isEmpty()) {
+			Slice<T> current = pending.pop();
+			boolean merged = false;
+
+			for(String category : categories) {
+				Slice<T> neighbour = neighbours(category).get(SliceSignature.without(current, categories, category));
+				if(neighbour != null) {
+					unregister(neighbour);
+					// current's collection may be shared with the slices it came from
+					current.detachEntry(category);
+					current.unionAdd(category, neighbour);
+					reducer.getListener().onMerge(1);
+					pending.push(current);
+					merged = true;
+					break;
+				}
+			}
+
+			if(!merged) {
+				register(current);
+			}
+		}
+	}
+
+	/**
+	 * Splits the slice into at most d disjoint slices covering everything but the point.
+	 * The i-th piece fixes the first i - 1 categories to the point's values and holds every value
+	 * but the point's in the i-th category. The largest categories go first to keep the pieces big.
+	 */
+	private List<Slice<T>> split(Slice<T> slice, Slice<T> point) {
+		List<String> order = new ArrayList<>(categories);
+		order.sort(Comparator.comparingInt((String c) -> slice.getEntry(c).size()).reversed());
+
+		List<Slice<T>> pieces = new ArrayList<>();
+		Slice<T> remaining = slice.copy();
+		for(String category : order) {
+			if(remaining.getEntry(category).size() > 1) {
+				Slice<T> piece = remaining.copy();
+				piece.detachEntry(category);
+				piece.getEntry(category).remove(value(point, category));
+				pieces.add(piece);
+			}
+			remaining.addEntry(category, point.getEntry(category));
+		}
+		return pieces;
+	}
+
+	private void register(Slice<T> slice) {
+		slices.add(slice);
+		for(String category : categories) {
+			neighbours(category).put(SliceSignature.without(slice, categories, category), slice);
+
+			Map<Object, Set<Slice<T>>> categoryPostings = postings(category);
+			for(Object value : slice.getEntry(category)) {
+				categoryPostings.computeIfAbsent(value, v -> Collections.newSetFromMap(new IdentityHashMap<>())).add(slice);
+			}
+		}
+	}
+
+	private void unregister(Slice<T> slice) {
+		slices.remove(slice);
+		for(String category : categories) {
+			neighbours(category).remove(SliceSignature.without(slice, categories, category), slice);
+
+			Map<Object, Set<Slice<T>>> categoryPostings = postings(category);
+			for(Object value : slice.getEntry(category)) {
+				Set<Slice<T>> holders = categoryPostings.get(value);
+				holders.remove(slice);
+				if(holders.isEmpty()) {
+					categoryPostings.remove(value);
+				}
+			}
+		}
+	}
+
+	private Map<SliceSignature, Slice<T>> neighbours(String category) {
+		return neighbours.computeIfAbsent(category, c -> new HashMap<>());
+	}
+
+	private Map<Object, Set<Slice<T>>> postings(String category) {
+		return postings.computeIfAbsent(category, c -> new HashMap<>());
+	}
+
+	private static Object value(Slice<?> point, String category) {
+		return point.getEntry(category).iterator().next();
+	}
+}
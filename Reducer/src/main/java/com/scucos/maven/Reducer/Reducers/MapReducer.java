@@ -1,34 +1,128 @@
 package com.scucos.maven.Reducer.Reducers;
 
 import java.util.Collection;
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
 
 import com.scucos.maven.Reducer.Slice;
 import com.scucos.maven.Reducer.Slice.SliceConstructionException;
 import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
 
 /**
- * Convenience reducer for Map<K, Collection<V>> values.
+ * Reducer for Map<K, Collection<V>> values, with any engine doing the actual reduction.
+ *
+ * Every key of the map is a category and its collection the positions along it. Maps are turned
+ * into slices by reading their entries, without reflection, and the collections are put in the
+ * slice as they are. Slice categories are Strings, so the reducer keeps a dictionary between keys
+ * and categories: String keys are their own category, other keys get a generated name (skipping
+ * names already taken by String keys). The dictionary only grows with the distinct keys seen and
+ * is safe to use from several threads, so one MapReducer can still be shared.
+ *
+ * As long as every key seen was its own category (all keys are Strings), a reduced slice is
+ * turned back into a map by handing out the slice's own map, without copying. Otherwise a new
+ * map is built around the same collections.
+ *
+ * say we reduce with NewRecursiveReducer instead of the default RecursiveReducer
+ * new MapReducer<String, Integer>(new NewRecursiveReducer<Map<String, Collection<Integer>>>() {})
  *
  * Runtime complexity:
- * MapReducer delegates the actual reduction to RecursiveReducer after converting
- * each map into a Slice. Let n be the number of maps, d be the number of keys or
- * dimensions represented in each map, and V be the N-dimensional volume of the
- * smallest super-slice containing the input point-slices. The dominant runtime
- * is the inherited RecursiveReducer reduction cost, roughly proportional to V
- * for dense point-slice inputs, plus O(n * d) to convert input maps to slices and
- * O(r * d) to convert the r reduced slices back to maps. Space usage is O(n * d)
- * for the intermediate slice representation plus the reducer's working sets.
+ * The reduction costs whatever the engine's does, plus O(n * d) hash lookups to turn the n input
+ * maps of d keys into slices and O(r) (or O(r * d) when keys were renamed) for the r reduced slices.
+ *
+ * @param <K>
+ * @param <V>
  */
-public class MapReducer<K, V> extends RecursiveReducer<Map<K, Collection<V>>> {	
-	
+public class MapReducer<K, V> implements Reducer<Map<K, Collection<V>>> {
+
+	private static final String GENERATED_PREFIX = "#";
+
+	private final Reducer<Map<K, Collection<V>>> engine;
+
+	private final Map<Object, String> categories = new ConcurrentHashMap<>();
+	private final Map<String, Object> keys = new ConcurrentHashMap<>();
+	private volatile boolean renamed = false;
+
+	/**
+	 * Reduces with a RecursiveReducer
+	 */
+	public MapReducer() {
+		this(new RecursiveReducer<Map<K, Collection<V>>>() {});
+	}
+
+	/**
+	 * @param engine the reducer whose reduceSlices does the reduction, its toSlice and fromSlice are not used
+	 */
+	public MapReducer(Reducer<Map<K, Collection<V>>> engine) {
+		this.engine = engine;
+	}
+
+	@Override
+	public Set<Slice<Map<K, Collection<V>>>> reduceSlices(Set<Slice<Map<K, Collection<V>>>> slices) {
+		return engine.reduceSlices(slices);
+	}
+
 	@Override
+	public Set<Slice<Map<K, Collection<V>>>> reduceSlices(Set<Slice<Map<K, Collection<V>>>> slices, ReductionBudget.Tracker tracker) {
+		return engine.reduceSlices(slices, tracker);
+	}
+
+	@Override
+	@SuppressWarnings({ "unchecked", "rawtypes" })
 	public Slice<Map<K, Collection<V>>> toSlice(Map<K, Collection<V>> t) throws SliceConstructionException {
-		return new Slice<Map<K, Collection<V>>>(t);
+		Slice<Map<K, Collection<V>>> slice = new Slice<>((Class) Map.class);
+		for(Map.Entry<K, Collection<V>> entry : t.entrySet()) {
+			if(entry.getKey() == null || entry.getValue() == null) {
+				throw new SliceConstructionException("Map entries need a key and a collection, got " + entry);
+			}
+			slice.addEntry(categoryOf(entry.getKey()), entry.getValue());
+		}
+		return slice;
 	}
 
 	@Override
+	@SuppressWarnings("unchecked")
 	public Map<K, Collection<V>> fromSlice(Slice<Map<K, Collection<V>>> slice) throws ObjectConstructionException {
-		return Slice.toMap(slice);
+		if(!renamed) { // Every category is the key itself
+			return (Map<K, Collection<V>>) (Map<?, ?>) slice.getMap();
+		}
+		Map<K, Collection<V>> map = new HashMap<>();
+		for(Map.Entry<String, Collection<?>> entry : slice.getMap().entrySet()) {
+			map.put((K) keys.get(entry.getKey()), (Collection<V>) entry.getValue());
+		}
+		return map;
+	}
+
+	@Override
+	public ReductionListener getListener() {
+		return engine.getListener();
+	}
+
+	private String categoryOf(Object key) {
+		String category = categories.get(key);
+		return (category != null) ? category : intern(key);
+	}
+
+	private synchronized String intern(Object key) {
+		String category = categories.get(key);
+		if(category != null) {
+			return category;
+		}
+
+		if(key instanceof String && !keys.containsKey(key)) {
+			category = (String) key;
+		} else {
+			renamed = true;
+			int next = keys.size();
+			while(keys.containsKey(GENERATED_PREFIX + next)) {
+				next++;
+			}
+			category = GENERATED_PREFIX + next;
+		}
+		// The reverse entry goes first, fromSlice must find the key of any category a slice can hold
+		keys.put(category, key);
+		categories.put(key, category);
+		return category;
 	}
 }
@@ -1,16 +1,11 @@
 package com.scucos.maven.Reducer.Reducers;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Set;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveTask;
 
-import com.google.common.collect.ImmutableSet;
 import com.scucos.maven.Reducer.Slice;
 
 /**
@@ -22,8 +17,10 @@ import com.scucos.maven.Reducer.Slice;
  * Let n be the number of input slices, d be the number of categories per slice,
  * U_i be the number of unique values/collections in category i, and
  * V = product(U_i) be the N-dimensional volume of the smallest super-slice that
- * contains the input. This implementation maintains a mutable count map across
+ * contains the input. This implementation maintains mutable counts across
  * recursive calls, avoiding some of the recounting done by RecursiveReducer.
+ * The counts are primitive ints indexed by interned collection ids (see CollectionCounts),
+ * so after the initial count a collection's contents are only hashed again when a merge creates it.
  * For the intended point-slice workload, expected runtime is roughly
  * proportional to the explored portion of V, with dense inputs approaching
  * O(V * d) and sparse/non-mergeable inputs often closer to O(n * d).
@@ -36,123 +33,165 @@ import com.scucos.maven.Reducer.Slice;
  * versus RecursiveReducer by reusing count state instead of rebuilding the full
  * collection-count queue at every recursion level.
  *
- * Space usage is O(n * d) for working slices, partitions, and count maps,
+ * Space usage is O(n * d) for working slices, partitions, and counts,
  * excluding the storage already held by category values.
  *
+ * Given a ForkJoinPool the two partitions of each level are reduced as separate tasks
+ * with their own counts, so large inputs use every core. Rebuilding the counts per
+ * task adds O(n * d) per parallel level, which is why partitions below the sequential
+ * threshold go back to the shared-counts algorithm.
+ *
  * @author SCucos
  *
  * @param <T> The entity type that will be merged
  */
 public abstract class NewRecursiveReducer<T> implements Reducer<T> {
 
-	private static boolean CONTAINS_MOST = true;
-	private static boolean WITHOUT_MOST = false;
+	public static final int DEFAULT_SEQUENTIAL_THRESHOLD = 4096;
+	
+	private final ForkJoinPool pool;
+	private final int sequentialThreshold;
+	
+	/**
+	 * Reduces on the calling thread
+	 */
+	public NewRecursiveReducer() {
+		this(null, Integer.MAX_VALUE);
+	}
+	
+	/**
+	 * Reduces independent partitions as separate tasks on the given pool,
+	 * partitions smaller than DEFAULT_SEQUENTIAL_THRESHOLD are reduced sequentially
+	 * @param pool
+	 */
+	public NewRecursiveReducer(ForkJoinPool pool) {
+		this(pool, DEFAULT_SEQUENTIAL_THRESHOLD);
+	}
 	
-	static long calls = 0;
+	/**
+	 * Reduces independent partitions as separate tasks on the given pool,
+	 * partitions smaller than sequentialThreshold are reduced sequentially
+	 * @param pool
+	 * @param sequentialThreshold
+	 */
+	public NewRecursiveReducer(ForkJoinPool pool, int sequentialThreshold) {
+		this.pool = pool;
+		this.sequentialThreshold = sequentialThreshold;
+	}
 	
 	@Override
 	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
-		Set<Slice<T>> reduced = reduceRecursive(slices, buildCollectionCounts(slices).o2, getWidth(slices)).o1;
-		
-		//System.out.println(String.format("%s calls to buildQueue", calls));
-		calls = 0;
-		return reduced;
-	}	
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
 	
 	/**
-	 * Container class that's used to track a Collection of objects, 
-	 * what category they belong to, and the collections count across all slices
-	 * @author SCucos
+	 * Once the budget runs out every recursive call (or task) returns its partition unchanged
 	 */
-	public class CollectionNode implements Comparable<CollectionNode> {
-		public Collection<?> objects;
-		public Object category;
-		public Integer count;
-		
-		public CollectionNode(Collection<?> objects, Object category, Integer count) {
-			this.objects = objects;
-			this.category = category;
-			this.count = count;
-		}
-
-		@Override
-		public int compareTo(CollectionNode other) {
-			Integer otherCount = other.count;
-			return (count > otherCount) ? -1 : (count == otherCount) ? 0 : 1;
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		if(tracker.exhausted()) { // Not even worth counting the collections
+			return slices;
 		}
-		
-		@Override
-		public String toString() {
-			return category.toString() + ":" + objects.toString() + " " + count.toString();
+		Slice<T>[] rows = SliceRows.of(slices);
+		String[] order = SliceRows.categories(rows);
+		int reduced;
+		if(pool == null || rows.length < sequentialThreshold) {
+			CollectionCounts counts = buildCollectionCounts(rows, 0, rows.length, order, order.length);
+			reduced = reduceRecursive(rows, 0, rows.length, order, counts, order.length, 0, tracker);
+		} else {
+			reduced = pool.invoke(new ReduceTask(rows, 0, rows.length, order, order.length, 0, tracker));
 		}
-	}
+		return SliceRows.toSet(rows, reduced);
+	}	
 	
-	public class Tuple<T1,T2> {
-		T1 o1;
-		T2 o2;
-		
-		public Tuple(T1 o1, T2 o2) {
-			this.o1 = o1;
-			this.o2 = o2;
-		}
-		
-		public void setO1(T1 o1) {
-			this.o1 = o1;
-		}
+	/**
+	 * Parallel version of reduceRecursive.
+	 * The slices containing the most common collection and the slices without it are independent
+	 * sub-partitions, so they are reduced as two tasks, each with count state built from its own
+	 * partition rather than the shared counts the sequential version keeps up to date. If the partition
+	 * containing the most common collection merged, the joined result is retried as a whole, like
+	 * the sequential version does. Working sets, or partitions containing the most common collection,
+	 * below the sequential threshold fall back to reduceRecursive.
+	 * The tasks work on disjoint ranges of the same rows, the forked task gets its own copy of the
+	 * category order since both tasks move their partitioned categories around in it.
+	 */
+	@SuppressWarnings("serial")
+	private class ReduceTask extends RecursiveTask<Integer> {
+		private final Slice<T>[] rows;
+		private final int from;
+		private final int to;
+		private final String[] order;
+		private final int width;
+		private final int depth;
+		private final ReductionBudget.Tracker tracker;
 		
-		public void setO2(T2 o2) {
-			this.o2 = o2;
+		ReduceTask(Slice<T>[] rows, int from, int to, String[] order, int width, int depth, ReductionBudget.Tracker tracker) {
+			this.rows = rows;
+			this.from = from;
+			this.to = to;
+			this.order = order;
+			this.width = width;
+			this.depth = depth;
+			this.tracker = tracker;
 		}
 		
 		@Override
-		public String toString() {
-			return "O1: " + o1.toString() + " O2: " + o2.toString();
+		protected Integer compute() {
+			int working = to - from;
+			
+			while(!tracker.exhausted()) {
+				int end = from + working;
+				CollectionCounts counts = buildCollectionCounts(rows, from, end, order, width);
+				tracker.compare(working);
+				if(working < sequentialThreshold || working == 1 || width <= 1) {
+					return reduceRecursive(rows, from, end, order, counts, width, depth, tracker);
+				}
+				
+				int most = counts.mostCommon();
+				int mostCount = (most < 0) ? 0 : counts.count(most);
+				
+				if(mostCount <= 1) { // No merging is possible, all collections are unique
+					return working;
+				}
+				
+				if(mostCount < sequentialThreshold) {
+					// Forking off a small partition leaves a long chain of tasks that each rebuild the counts
+					return reduceRecursive(rows, from, end, order, counts, width, depth, tracker);
+				}
+				
+				int mid = SliceRows.partition(rows, from, end, counts, most);
+				getListener().onPartition(depth, mid - from, end - mid);
+				
+				String[] mostOrder = order.clone();
+				//Remove the category from the partition holding the most common collection
+				SliceRows.removeDimension(mostOrder, width, counts.category(most));
+				
+				ReduceTask mostTask = new ReduceTask(rows, from, mid, mostOrder, width - 1, depth + 1, tracker);
+				mostTask.fork();
+				int reducedWithout = new ReduceTask(rows, mid, end, order, width, depth + 1, tracker).compute();
+				int reducedMost = mostTask.join();
+				
+				int reduced = SliceRows.join(rows, from, reducedMost, mid, reducedWithout);
+				
+				getListener().onPass(working, reduced);
+				tracker.pass();
+				working = reduced;
+				if(reducedMost == mid - from) {
+					return working;
+				}
+			}
+			return working;
 		}
 	}
 	
 	/**
-	 * Constructs a PriorityQueue<CollectionNode> that is ordered by the nodes count parameter. 
-	 * The queue will contain a node for each unique Collection<?> of objects across all of 
-	 * the supplied slices categories. O(slice.width * slices.size())
-	 * @param slices
+	 * Counts how many of the slices in rows[from, to) hold each (category, collection) pair
+	 * of the first width categories, interning every collection to an id. O(width * (to - from))
 	 * @return
 	 */
-	Tuple<PriorityQueue<CollectionNode>, Map<Collection<?>, Tuple<Integer, String>>> buildCollectionCounts(Set<Slice<T>> slices) {
-		calls += 1;
-		PriorityQueue<CollectionNode> queue = new PriorityQueue<>();
-		
-		Map<Collection<?>, Tuple<Integer, String>> map = new HashMap<>();
-		
-		if(slices.size() == 0) {
-			return new Tuple<>(queue, map);
-		}
-		
-		Map<Collection<?>, Integer> collectionCountMap = new HashMap<>();
-		Map<Collection<?>, String> collectionCategoryMap = new HashMap<>();
-		
-		
-		Set<String> categories = slices.iterator().next().getCategories();
-		for(Slice<T> slice : slices) {
-			for(String category : categories) {
-				Collection<?> objects = slice.getEntry(category);
-				collectionCountMap.put(objects, collectionCountMap.getOrDefault(objects, 0) + 1);
-				if(!collectionCategoryMap.containsKey(objects)) {
-					collectionCategoryMap.put(objects, category);
-				}
-			}
-		}
-		
-		for(Entry<Collection<?>, String> partialNode : collectionCategoryMap.entrySet()) {
-			Collection<?> objects = partialNode.getKey();
-			String category = partialNode.getValue();
-			Integer count = collectionCountMap.get(objects);
-			
-			map.put(objects, new Tuple<>(count, category));
-			
-			queue.add(new CollectionNode(objects, category, count));
-		}
-		
-		return new Tuple<>(queue, map);
+	CollectionCounts buildCollectionCounts(Slice<T>[] rows, int from, int to, String[] order, int width) {
+		getListener().onCountsBuilt(to - from);
+		return new CollectionCounts(rows, from, to, order, width);
 	}
 
 	
@@ -163,8 +202,8 @@ public abstract class NewRecursiveReducer<T> implements Reducer<T> {
 	 * and many bugs such as NPEs are possible when these invariants fail
 	 * Invariants:
 	 * 	1) All Slice<T>s provided in the slices argument have the same number of and types of categories
-	 *  2) collectionsQueue was computed using the incoming slices (the counts are correct)
-	 *  3) width is equal to getWidth(slices)
+	 *  2) counts was computed using the incoming slices (the counts are correct)
+	 *  3) order holds the categories of the slices, and the first width of them are the ones left to reduce
 	 *  
 	 *  Calls to the method reduceSlices(Set<Slice<T>> slices) should 
 	 *  always run successfully and will maintain the invariants properly.
@@ -176,160 +215,186 @@ public abstract class NewRecursiveReducer<T> implements Reducer<T> {
 	 * whereas a more comprehensive algorithm that could work on slices 
 	 * in general may have worse runtime characteristics.
 	 * 
-	 * @param slices
-	 * @param collectionsQueue
+	 * The recursion runs on an explicit stack of frames instead of the thread's stack, so
+	 * the long chains of partitions (and retries after merges) on sparse inputs don't need
+	 * a larger -Xss. Finished frames are kept and reused for later partitions.
+	 * Frames work on ranges of rows, partitioned in place (see SliceRows), and hide the
+	 * partitioned category from the partition holding it with the width cursor.
+	 * 
+	 * @param rows
+	 * @param from
+	 * @param to
+	 * @param order
+	 * @param counts
 	 * @param width
-	 * @param secondTry
-	 * @return
+	 * @param depth
+	 * @param tracker
+	 * @return the number of reduced slices, starting at from
 	 */
-	private Tuple<Set<Slice<T>>, Map<Collection<?>, Tuple<Integer, String>>> reduceRecursive(Set<Slice<T>> slices, final Map<Collection<?>, Tuple<Integer, String>> map, int width) {
-		if(slices.isEmpty() || slices.size() == 1 || width == 0) {
-			return new Tuple<>(slices, map);
-		}
+	private int reduceRecursive(Slice<T>[] rows, int from, int to, String[] order, final CollectionCounts counts, int width, int depth, ReductionBudget.Tracker tracker) {
+		Deque<Frame> stack = new ArrayDeque<>();
+		Deque<Frame> spare = new ArrayDeque<>();
+		stack.push(new Frame().reset(from, to, width, depth));
 		
-		if(width == 1) {
-			String category = null;
-			
-			for(Slice<T> slice : slices) {
-				category = slice.getCategories().stream().findAny().get();
-				Tuple<Integer, String> tuple = map.get(slice.getEntry(category));
-				tuple.setO1(tuple.o1 - 1);
+		int returned = -1;
+		while(true) {
+			Frame frame = stack.peek();
+			int result = step(frame, returned, rows, order, counts, stack, spare, tracker);
+			returned = -1;
+			if(result >= 0) {
+				spare.push(stack.pop());
+				if(stack.isEmpty()) {
+					return result;
+				}
+				returned = result;
 			}
+		}
+	}
+	
+	/**
+	 * Advances the frame by one stage
+	 * @param frame
+	 * @param returned the result of the frame's last pushed child, if any
+	 * @return how many slices the frame's range was reduced to, or -1 if it pushed a child or has to retry
+	 */
+	private int step(Frame frame, int returned, Slice<T>[] rows, String[] order, final CollectionCounts counts, Deque<Frame> stack, Deque<Frame> spare, ReductionBudget.Tracker tracker) {
+		if(frame.stage == Stage.REDUCED_MOST) {
+			int mostBefore = frame.mid - frame.from;
+			int mostAfter = returned;
+			int without = frame.to - frame.mid;
 			
-			final String finalCategory = category;
-			
-			final Collection<Object> lost = new HashSet<>();
-			
-			Slice<T> reduced = slices.stream().reduce(
-					null, 
-					(accumulator, current) -> {
-						if(accumulator == null) {
-							map.remove(current.getEntry(finalCategory));
-							lost.addAll(current.getEntry(finalCategory));
-							return current;
-						}
-						
-						accumulator.unionAdd(finalCategory, current);
-						return accumulator;
-					}
-			);
-			map.put(reduced.getEntry(finalCategory), new Tuple<>(1, finalCategory));
-			map.put(lost, new Tuple<>(0, finalCategory));
+			if(tracker.isStopped()) {
+				// Out of budget, the counts were left half updated and are not needed anymore
+				return SliceRows.join(rows, frame.from, mostAfter, frame.mid, without);
+			}
 			
-			return new Tuple<>(ImmutableSet.of(reduced), map);
-		}
-		
-		Collection<?> mostObjects = null;
-		String mostCategory = null;
-		Integer mostCount = 0; 
-		
-		for(Entry<Collection<?>, Tuple<Integer, String>> entry : map.entrySet()) {
-			int size = entry.getValue().o1;
-			if(size > mostCount) {
-				mostCount = size;
-				mostObjects = entry.getKey();
-				mostCategory = entry.getValue().o2;
+			getListener().onPass(frame.to - frame.from, without + mostAfter);
+			tracker.pass();
+			if(mostBefore == mostAfter) {
+				
+				// The most common collection's category is still at order[width - 1]
+				for(int i = frame.from; i < frame.mid; i++) {
+					counts.add(rows[i], order, frame.width - 1, -1);
+				}
+				
+				frame.reducedMost = mostAfter;
+				frame.stage = Stage.REDUCED_WITHOUT;
+				stack.push(obtain(spare).reset(frame.mid, frame.to, frame.width, frame.depth + 1));
+				return -1;
+				
+			} else {
+				counts.setCount(frame.most, mostAfter);
+				
+				for(int i = frame.mid; i < frame.to; i++) {
+					counts.add(rows[i], order, frame.width, 1);
+				}
+				
+				int reduced = SliceRows.join(rows, frame.from, mostAfter, frame.mid, without);
+				
+				// Retry the merged slices in the same frame
+				frame.reset(frame.from, frame.from + reduced, frame.width, frame.depth);
+				return -1;
 			}
 		}
 		
-		if(mostCount <= 1) { // No merging is possible, all collections are unique
-			return new Tuple<>(slices, map);
+		if(frame.stage == Stage.REDUCED_WITHOUT) {
+			return SliceRows.join(rows, frame.from, frame.reducedMost, frame.mid, returned);
 		}
 		
-		final String finalMostCategory = mostCategory;
-		final Collection<?> finalMostObjects = mostObjects;
-		
-		Map<Boolean, List<Slice<T>>> partition = slices.stream().collect(Collectors.partitioningBy(s -> s.getEntry(finalMostCategory).equals(finalMostObjects)));
-		
-		Set<Slice<T>> slicesContainingMost = partition.get(CONTAINS_MOST)
-				.stream()
-				.map(s -> { 
-					//Remove this section of the slice to reduce width
-					s.deleteEntry(finalMostCategory);
-					return s;
-				})
-				.collect(Collectors.toSet());
-		
-		Set<Slice<T>> slicesWithoutMost = partition.get(WITHOUT_MOST)
-				.stream()
-				.collect(Collectors.toSet());
+		int from = frame.from;
+		int to = frame.to;
+		int size = to - from;
+		int width = frame.width;
 		
+		if(size <= 1 || width == 0) {
+			return size;
+		}
 		
-		Tuple<Integer, String> addBack = map.remove(mostObjects);
+		if(tracker.exhausted()) { // Out of budget, returned like a partition where nothing can merge
+			return size;
+		}
+		tracker.compare(size);
 		
-		for(Slice<T> slice : slicesWithoutMost) {
-			for(Collection<?> collection : slice.getMap().values()) {
-				Tuple<Integer, String> innerTuple = map.get(collection);
-				innerTuple.setO1(innerTuple.o1 - 1);
-				if(innerTuple.o1 <= 0) {
-					
-				}
+		if(width == 1) {
+			String category = order[0];
+			
+			for(int i = from; i < to; i++) {
+				counts.add(counts.id(category, rows[i].getEntry(category)), -1);
 			}
+			
+			Slice<T> reduced = rows[from];
+			// The first slice's collection is dropped from the counts
+			counts.setCount(counts.id(category, reduced.getEntry(category)), 0);
+			// The collection may be shared with slices outside this partition
+			reduced.detachEntry(category);
+			for(int i = from + 1; i < to; i++) {
+				reduced.unionAdd(category, rows[i]);
+			}
+			// Only interned once the union is complete, ids require unchanging collections
+			counts.setCount(counts.id(category, reduced.getEntry(category)), 1);
+			getListener().onMerge(size - 1);
+			tracker.removed(size - 1);
+			
+			return 1;
 		}
-
 		
-		int mostBefore = slicesContainingMost.size();
+		int most = counts.mostCommon();
 		
-		Tuple<Set<Slice<T>>, Map<Collection<?>, Tuple<Integer, String>>> reducedMostResult = reduceRecursive(slicesContainingMost, map, width - 1);
+		if(most < 0 || counts.count(most) <= 1) { // No merging is possible, all collections are unique
+			return size;
+		}
 		
-		Set<Slice<T>> reducedMost = reducedMostResult
-				.o1
-				.stream()
-				.map(r -> {
-					// Get the width back to normal
-					r.addEntry(finalMostCategory, finalMostObjects);
-					return r;
-				})
-				.collect(Collectors.toSet());
+		int mid = SliceRows.partition(rows, from, to, counts, most);
 		
-		int mostAfter = reducedMost.size();
+		getListener().onPartition(frame.depth, mid - from, to - mid);
 		
-		if(mostBefore == mostAfter) {
-			
-			for(Slice<T> slice : reducedMost) {
-				for(Collection<?> collection : slice.getMap().values()) {
-					if(collection != mostObjects) {
-						Tuple<Integer, String> innerTuple = map.get(collection);
-						innerTuple.setO1(innerTuple.o1 - 1);
-					}
-
-				}
-			}
-			
-			Set<Slice<T>> reducedWithout = reduceRecursive(slicesWithoutMost, map, width).o1;
-			
-			reducedWithout.addAll(reducedMost);
-			
-			return new Tuple<>(reducedWithout, map);
-			
-			
-			
-		} else {
-			addBack.setO1(reducedMost.size());
-			map.put(mostObjects, addBack);
-			
-			for(Slice<T> slice : slicesWithoutMost) {
-				for(Collection<?> collection : slice.getMap().values()) {
-					Tuple<Integer, String> innerTuple = map.get(collection);
-					innerTuple.setO1(innerTuple.o1 + 1);
-				}
-			}
-			
-			reducedMost.addAll(slicesWithoutMost);
-			
-			return reduceRecursive(reducedMost, map, width);
+		// The partition no longer holds the most category, so it must not be picked again
+		counts.setCount(most, 0);
+		
+		for(int i = mid; i < to; i++) {
+			counts.add(rows[i], order, width, -1);
 		}
+		
+		//Remove the category from the partition holding the most common collection
+		SliceRows.removeDimension(order, width, counts.category(most));
+		
+		frame.most = most;
+		frame.mid = mid;
+		frame.stage = Stage.REDUCED_MOST;
+		stack.push(obtain(spare).reset(from, mid, width - 1, frame.depth + 1));
+		return -1;
 	}
 	
+	private static Frame obtain(Deque<Frame> spare) {
+		return spare.isEmpty() ? new Frame() : spare.pop();
+	}
+	
+	private enum Stage { PARTITION, REDUCED_MOST, REDUCED_WITHOUT }
+	
 	/**
-	 * Helper method for getting the number of categories in the slices (width)
-	 * @param slices
-	 * @return
+	 * The state of one reduceRecursive call, over rows[from, to)
 	 */
-	private int getWidth(Collection<Slice<T>> slices) {
-		if(slices.size() == 0) {
-			return 0;
+	private static class Frame {
+		int from;
+		int to;
+		int width;
+		int depth;
+		Stage stage;
+		
+		int most;
+		int mid;
+		int reducedMost;
+		
+		Frame reset(int from, int to, int width, int depth) {
+			this.from = from;
+			this.to = to;
+			this.width = width;
+			this.depth = depth;
+			this.stage = Stage.PARTITION;
+			this.most = -1;
+			this.mid = from;
+			this.reducedMost = 0;
+			return this;
 		}
-		return slices.iterator().next().getWidth();
 	}
 }
@@ -0,0 +1,30 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Prints the phase timings and the size of every reduction, like Reducer.time used to
+ */
+public class PrintingReductionListener implements ReductionListener {
+
+	private final PrintStream out;
+
+	public PrintingReductionListener() {
+		this(System.out);
+	}
+
+	public PrintingReductionListener(PrintStream out) {
+		this.out = out;
+	}
+
+	@Override
+	public void onPhase(Phase phase, long nanos) {
+		out.println(String.format("%s took %s milliseconds", phase, TimeUnit.NANOSECONDS.toMillis(nanos)));
+	}
+
+	@Override
+	public void onReduced(int inputSlices, long inputVolume, int outputSlices, long outputVolume) {
+		out.println(String.format("Reduced %s slice(s) to %s slice(s), covering %s point(s)", inputSlices, outputSlices, outputVolume));
+	}
+}
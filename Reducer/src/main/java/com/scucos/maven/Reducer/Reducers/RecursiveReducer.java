@@ -1,16 +1,9 @@
 package com.scucos.maven.Reducer.Reducers;
 
-import java.util.Collection;
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.List;
-import java.util.Map;
-import java.util.PriorityQueue;
+import java.util.ArrayDeque;
+import java.util.Deque;
 import java.util.Set;
-import java.util.Map.Entry;
-import java.util.stream.Collectors;
 
-import com.google.common.collect.ImmutableSet;
 import com.scucos.maven.Reducer.Slice;
 
 /**
@@ -24,7 +17,9 @@ import com.scucos.maven.Reducer.Slice;
  * V = product(U_i) be the N-dimensional volume of the smallest super-slice that
  * contains the input. For point-slice inputs with uniform category structure,
  * the algorithm recursively partitions by the most common category entry and
- * rebuilds collection counts at each recursive level. The expected work is
+ * rebuilds collection counts at each recursive level. The counts are kept in a
+ * bucket queue (see CollectionCounts), so finding the most common entry is O(1)
+ * amortized instead of ordering every unique collection. The expected work is
  * roughly proportional to the explored portion of that containing volume. Dense
  * inputs approach O(V * d), while sparse inputs run closer to O(n * d) when the
  * recursion quickly proves that no larger complete regions can be formed.
@@ -44,82 +39,29 @@ import com.scucos.maven.Reducer.Slice;
  */
 public abstract class RecursiveReducer<T> implements Reducer<T> {
 
-	private static boolean CONTAINS_MOST = true;
-	private static boolean WITHOUT_MOST = false;
-	
-	static long calls = 0;
-	
 	@Override
 	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
-		Set<Slice<T>> reduced = reduceRecursive(slices, getWidth(slices));
-		
-		//System.out.println(String.format("%s calls to buildQueue", calls));
-		calls = 0;
-		return reduced;
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
 	}	
 	
 	/**
-	 * Container class that's used to track a Collection of objects, 
-	 * what category they belong to, and the collections count across all slices
-	 * @author SCucos
+	 * Once the budget runs out every recursive call returns its partition unchanged
 	 */
-	public class CollectionNode implements Comparable<CollectionNode> {
-		public Collection<?> objects;
-		public String category;
-		public Integer count;
-		
-		public CollectionNode(Collection<?> objects, String category, Integer count) {
-			this.objects = objects;
-			this.category = category;
-			this.count = count;
-		}
-
-		@Override
-		public int compareTo(CollectionNode other) {
-			Integer otherCount = other.count;
-			return (count > otherCount) ? -1 : (count == otherCount) ? 0 : 1;
-		}
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		Slice<T>[] rows = SliceRows.of(slices);
+		String[] order = SliceRows.categories(rows);
+		return SliceRows.toSet(rows, reduceRecursive(rows, order, tracker));
 	}
 	
 	/**
-	 * Constructs a PriorityQueue<CollectionNode> that is ordered by the nodes count parameter. 
-	 * The queue will contain a node for each unique Collection<?> of objects across all of 
-	 * the supplied slices categories. O(slice.width * slices.size())
-	 * @param slices
+	 * Counts how many of the slices in rows[from, to) hold each (category, collection) pair
+	 * of the first width categories, ordered by count in a bucket queue. O(width * (to - from))
 	 * @return
 	 */
-	PriorityQueue<CollectionNode> buildCollectionCounts(Set<Slice<T>> slices) {
-		calls += 1;
-		PriorityQueue<CollectionNode> queue = new PriorityQueue<>();
-		
-		if(slices.size() == 0) {
-			return queue;
-		}
-		
-		Map<Collection<?>, Integer> collectionCountMap = new HashMap<>();
-		Map<Collection<?>, String> collectionCategoryMap = new HashMap<>();
-		
-		
-		Set<String> categories = slices.iterator().next().getCategories();
-		for(Slice<T> slice : slices) {
-			for(String category : categories) {
-				Collection<?> objects = slice.getEntry(category);
-				collectionCountMap.put(objects, collectionCountMap.getOrDefault(objects, 0) + 1);
-				if(!collectionCategoryMap.containsKey(objects)) {
-					collectionCategoryMap.put(objects, category);
-				}
-			}
-		}
-		
-		for(Entry<Collection<?>, String> partialNode : collectionCategoryMap.entrySet()) {
-			Collection<?> objects = partialNode.getKey();
-			String category = partialNode.getValue();
-			Integer count = collectionCountMap.get(objects);
-			
-			queue.add(new CollectionNode(objects, category, count));
-		}
-		
-		return queue;
+	CollectionCounts buildCollectionCounts(Slice<T>[] rows, int from, int to, String[] order, int width) {
+		getListener().onCountsBuilt(to - from);
+		return new CollectionCounts(rows, from, to, order, width);
 	}
 	
 	/**
@@ -129,8 +71,8 @@ public abstract class RecursiveReducer<T> implements Reducer<T> {
 	 * and many bugs such as NPEs are possible when these invariants fail
 	 * Invariants:
 	 * 	1) All Slice<T>s provided in the slices argument have the same number of and types of categories
-	 *  2) collectionsQueue was computed using the incoming slices (the counts are correct)
-	 *  3) width is equal to getWidth(slices)
+	 *  2) the counts are computed using the incoming slices
+	 *  3) order holds the categories of the slices
 	 *  
 	 *  Calls to the method reduceSlices(Set<Slice<T>> slices) should 
 	 *  always run successfully and will maintain the invariants properly.
@@ -142,93 +84,142 @@ public abstract class RecursiveReducer<T> implements Reducer<T> {
 	 * whereas a more comprehensive algorithm that could work on slices 
 	 * in general may have worse runtime characteristics.
 	 * 
-	 * @param slices
-	 * @param collectionsQueue
-	 * @param width
-	 * @param secondTry
-	 * @return
+	 * The recursion runs on an explicit stack of frames instead of the thread's stack, so
+	 * deep partition chains on sparse inputs don't need a larger -Xss. A frame first reduces
+	 * the partition containing the most common collection, then the partition without it,
+	 * and retries itself (reusing the frame) while that shrinks the slices.
+	 * Frames work on ranges of rows, partitioned in place (see SliceRows), and hide the
+	 * partitioned category from the partition holding it with the width cursor.
+	 * 
+	 * @param rows
+	 * @param order
+	 * @param tracker
+	 * @return the number of reduced slices, at the start of rows
 	 */
-	private Set<Slice<T>> reduceRecursive(Set<Slice<T>> slices, int width) {
-		if(slices.isEmpty() || slices.size() == 1 || width == 0) {
-			return slices;
+	private int reduceRecursive(Slice<T>[] rows, String[] order, ReductionBudget.Tracker tracker) {
+		Deque<Frame> stack = new ArrayDeque<>();
+		Deque<Frame> spare = new ArrayDeque<>();
+		stack.push(new Frame().reset(0, rows.length, order.length, 0));
+		
+		int returned = -1;
+		while(true) {
+			Frame frame = stack.peek();
+			int result = step(frame, returned, rows, order, stack, spare, tracker);
+			returned = -1;
+			if(result >= 0) {
+				spare.push(stack.pop());
+				if(stack.isEmpty()) {
+					return result;
+				}
+				returned = result;
+			}
 		}
-		
-		PriorityQueue<CollectionNode> collectionsQueue = buildCollectionCounts(slices);
-		
-		if(width == 1) {
-			Object category = collectionsQueue.poll().category;
-			Slice<T> reduced = slices.stream().reduce(
-					null, 
-					(accumulator, current) -> {
-						if(accumulator == null) {
-							return current;
-						}
-						
-						accumulator.unionAdd(category, current);
-						return accumulator;
-					}
-			);
-
-			return ImmutableSet.of(reduced);
+	}
+	
+	/**
+	 * Advances the frame by one stage
+	 * @param frame
+	 * @param returned the result of the frame's last pushed child, if any
+	 * @return how many slices the frame's range was reduced to, or -1 if it pushed a child or has to retry
+	 */
+	private int step(Frame frame, int returned, Slice<T>[] rows, String[] order, Deque<Frame> stack, Deque<Frame> spare, ReductionBudget.Tracker tracker) {
+		if(frame.stage == Stage.REDUCED_MOST) {
+			frame.reducedMost = returned;
+			frame.stage = Stage.REDUCED_WITHOUT;
+			stack.push(obtain(spare).reset(frame.mid, frame.to, frame.width, frame.depth + 1));
+			return -1;
 		}
 		
-		int prevSize = slices.size();
+		if(frame.stage == Stage.REDUCED_WITHOUT) {
+			int reduced = SliceRows.join(rows, frame.from, frame.reducedMost, frame.mid, returned);
+			
+			int prevSize = frame.to - frame.from;
+			getListener().onPass(prevSize, reduced);
+			tracker.pass();
+			if(reduced < prevSize || prevSize == 0) {
+				frame.reset(frame.from, frame.from + reduced, frame.width, frame.depth);
+				return -1;
+			}
+			
+			return reduced;
+		}
 		
-		CollectionNode mostNode = collectionsQueue.poll();
-		Collection<?> mostObjects = mostNode.objects;
-		String mostCategory = mostNode.category;
-		Integer mostCount = mostNode.count;
+		int from = frame.from;
+		int to = frame.to;
+		int size = to - from;
+		int width = frame.width;
 		
-		if(mostCount == 1) { // No merging is possible, all collections are unique
-			return slices;
+		if(size <= 1 || width == 0) {
+			return size;
 		}
 		
-		Map<Boolean, List<Slice<T>>> partition = slices.stream().collect(Collectors.partitioningBy(s -> s.getEntry(mostCategory).equals(mostObjects)));
+		if(tracker.exhausted()) { // Out of budget, the partition is still valid as it is
+			return size;
+		}
+		tracker.compare(size);
 		
-		Set<Slice<T>> slicesContainingMost = partition.get(CONTAINS_MOST)
-				.stream()
-				.map(s -> { 
-					//Remove this section of the slice to reduce width
-					s.deleteEntry(mostCategory);
-					return s;
-				})
-				.collect(Collectors.toSet());
+		if(width == 1) {
+			String category = order[0];
+			Slice<T> reduced = rows[from];
+			// The collection may be shared with slices outside this partition
+			reduced.detachEntry(category);
+			for(int i = from + 1; i < to; i++) {
+				reduced.unionAdd(category, rows[i]);
+			}
+
+			getListener().onMerge(size - 1);
+			tracker.removed(size - 1);
+			return 1;
+		}
 		
-		Set<Slice<T>> slicesWithoutMost = partition.get(WITHOUT_MOST)
-				.stream()
-				.collect(Collectors.toSet());
+		CollectionCounts counts = buildCollectionCounts(rows, from, to, order, width);
+		int most = counts.mostCommon();
 		
-		Set<Slice<T>> reducedMost = reduceRecursive(slicesContainingMost, width - 1)
-				.stream()
-				.map(r -> {
-					// Get the width back to normal
-					r.addEntry(mostCategory, mostObjects);
-					return r;
-				})
-				.collect(Collectors.toSet());
+		if(most < 0 || counts.count(most) == 1) { // No merging is possible, all collections are unique
+			return size;
+		}
 		
-		Set<Slice<T>> reduceWithoutMost = reduceRecursive(slicesWithoutMost, width);
+		int mid = SliceRows.partition(rows, from, to, counts, most);
 		
-		Set<Slice<T>> reduced = new HashSet<Slice<T>>();
-		reduced.addAll(reducedMost);
-		reduced.addAll(reduceWithoutMost);
+		getListener().onPartition(frame.depth, mid - from, to - mid);
 		
-		if(reduced.size() < prevSize || prevSize == 0) {
-			return reduceRecursive(reduced, width);
-		}
+		//Remove the category from the partition holding the most common collection
+		SliceRows.removeDimension(order, width, counts.category(most));
 		
-		return reduced;
+		frame.mid = mid;
+		frame.stage = Stage.REDUCED_MOST;
+		stack.push(obtain(spare).reset(from, mid, width - 1, frame.depth + 1));
+		return -1;
+	}
+	
+	private static Frame obtain(Deque<Frame> spare) {
+		return spare.isEmpty() ? new Frame() : spare.pop();
 	}
 	
+	private enum Stage { PARTITION, REDUCED_MOST, REDUCED_WITHOUT }
+	
 	/**
-	 * Helper method for getting the number of categories in the slices (width)
-	 * @param slices
-	 * @return
+	 * The state of one reduceRecursive call, over rows[from, to)
 	 */
-	private int getWidth(Set<Slice<T>> slices) {
-		if(slices.size() == 0) {
-			return 0;
+	private static class Frame {
+		int from;
+		int to;
+		int width;
+		int depth;
+		Stage stage;
+		
+		int mid;
+		int reducedMost;
+		
+		Frame reset(int from, int to, int width, int depth) {
+			this.from = from;
+			this.to = to;
+			this.width = width;
+			this.depth = depth;
+			this.stage = Stage.PARTITION;
+			this.mid = from;
+			this.reducedMost = 0;
+			return this;
 		}
-		return slices.iterator().next().getWidth();
 	}
 }
@@ -1,14 +1,22 @@
 package com.scucos.maven.Reducer.Reducers;
 
+import java.util.Collection;
 import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
 import java.util.stream.Collectors;
 
 import com.scucos.maven.Reducer.Slice.SliceConstructionException;
 import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.Codecs.SliceCodecs;
 import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
 
 /**
  * The interface that defines all the necessary methods that a reducer must implement.
+ * Implementations must not keep state between calls or change a collection they did not copy
+ * (the slices built by toSlice hold the input objects' own collections), so that one instance
+ * can reduce several sets at once, see BatchReducer.
  * @author SCucos
  * @param <T> the type of object that will be reduced
  */
@@ -17,40 +25,88 @@ public interface Reducer<T> {
 	/**
 	 * Default reduce method that handles turning Ts into Slice<T>s, 
 	 * dispatching to the correct reduceSlices method, and turning the reduced 
-	 * Slice<T>s back into Ts
+	 * Slice<T>s back into Ts. The time each step took is reported to getListener().
 	 * @param ts
 	 * @return
 	 */
 	default Set<T> reduce(Set<T> ts) {
-		int oldSize = ts.size();
+		return reduce(ts, ReductionBudget.UNLIMITED).getReduced();
+	}
+	
+	/**
+	 * Reduces within the given budget. When the budget runs out the reducer stops and the
+	 * slices it has at that point are returned, which still cover the input without overlap.
+	 * The budget starts with the call, but converting to and from slices is never cut short.
+	 * @param ts
+	 * @param budget
+	 * @return the reduced Ts and whether the reducer reached its fixpoint
+	 */
+	default ReductionResult<T> reduce(Set<T> ts, ReductionBudget budget) {
+		return reduce(ts, budget.start());
+	}
+	
+	/**
+	 * Reduces within the budget of an already started tracker, which lets another thread
+	 * cancel the reduction or watch its progress through the tracker.
+	 * @param ts
+	 * @param tracker
+	 * @return the reduced Ts and whether the reducer reached its fixpoint
+	 * @throws CancellationException if the tracker was cancelled, or the thread interrupted, while reducing
+	 */
+	default ReductionResult<T> reduce(Set<T> ts, ReductionBudget.Tracker tracker) {
+		ReductionListener listener = getListener();
 		
+		long start = System.nanoTime();
 		Set<Slice<T>> slices = ts
 				.stream()
 				.map(t -> toSlice(t))
 				.collect(Collectors.toSet());
+		long sliced = System.nanoTime();
+		listener.onPhase(ReductionListener.Phase.TO_SLICE, sliced - start);
 		
-		Set<Slice<T>> reduced = time(
-			new Timeable() {
-				int afterSize;
-				
-				@Override
-				public Object run() {
-					Set<Slice<T>> reduced = reduceSlices(slices);
-					afterSize = reduced.size();
-					return reduced; 
-				}
-	
-				@Override
-				public String runDescription() {
-					return String.format("Reduced %s slices(s) to %s slice(s)", oldSize, afterSize);
-				}
-			}
-		);
+		// Reducers change the slices in place, so the input has to be measured up front
+		int inputSlices = slices.size();
+		long inputVolume = (listener == ReductionListener.NO_OP) ? 0 : volume(slices);
+		tracker.setInputSlices(inputSlices);
+		
+		long reducing = System.nanoTime();
+		Set<Slice<T>> reduced = reduceSlices(slices, tracker);
+		long reducedAt = System.nanoTime();
+		listener.onPhase(ReductionListener.Phase.REDUCE_SLICES, reducedAt - reducing);
+		if(tracker.isCancelled()) { // Nobody wants the slices anymore, don't convert them back
+			throw new CancellationException("Reduction cancelled");
+		}
 		
-		return reduced
+		Set<T> result = reduced
 				.stream()
 				.map(s -> fromSlice(s))
 				.collect(Collectors.toSet());
+		listener.onPhase(ReductionListener.Phase.FROM_SLICE, System.nanoTime() - reducedAt);
+		
+		if(listener != ReductionListener.NO_OP) {
+			listener.onReduced(inputSlices, inputVolume, reduced.size(), volume(reduced));
+		}
+		return new ReductionResult<>(result, !tracker.isStopped());
+	}
+	
+	/**
+	 * Reduces in the background on the common ForkJoinPool
+	 * @param ts
+	 * @return a handle to cancel the reduction, watch its progress and get its result
+	 */
+	default ReductionHandle<T> reduceAsync(Set<T> ts) {
+		return reduceAsync(ts, ReductionBudget.UNLIMITED, ForkJoinPool.commonPool());
+	}
+	
+	/**
+	 * Reduces in the background on the executor, within the budget
+	 * @param ts
+	 * @param budget
+	 * @param executor
+	 * @return a handle to cancel the reduction, watch its progress and get its result
+	 */
+	default ReductionHandle<T> reduceAsync(Set<T> ts, ReductionBudget budget, Executor executor) {
+		return ReductionHandle.start(this, ts, budget, executor);
 	}
 	
 	/**
@@ -60,14 +116,29 @@ public interface Reducer<T> {
 	 */
 	Set<Slice<T>> reduceSlices(Set<Slice<T>> slices);
 	
+	/**
+	 * Reduces the given slices until nothing merges or the tracker's budget is exhausted.
+	 * Implementations check tracker.exhausted() between units of work, which is also how
+	 * cancellation reaches them, and report the slices they merge away to tracker.removed().
+	 * Reducers that don't override this ignore the budget and always run to completion.
+	 * @param slices
+	 * @param tracker
+	 * @return
+	 */
+	default Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		return reduceSlices(slices);
+	}
+	
 	/**
 	 * Responsible for taking a T t and constructing a Slice<T> from it.
+	 * By default goes through the SliceCodec generated for T, or reflection if there is none.
 	 * @param t
 	 * @return
 	 * @throws SliceConstructionException
 	 */
+	@SuppressWarnings("unchecked")
 	default Slice<T> toSlice(T t) throws SliceConstructionException {
-		return new Slice<T>(t);
+		return SliceCodecs.forClass((Class<T>) t.getClass()).toSlice(t);
 	}
 	
 	/**
@@ -81,28 +152,25 @@ public interface Reducer<T> {
 	}
 	
 	/**
-	 * Interface for a timeable operation with a description of running the operation
+	 * The listener this reducer reports its metrics to, ReductionListener.NO_OP unless overridden.
+	 * It is asked for at every event, so overrides should return a stored instance.
+	 * @return
 	 */
-	interface Timeable {
-		Object run();
-		String runDescription();
+	default ReductionListener getListener() {
+		return ReductionListener.NO_OP;
 	}
 	
 	/**
-	 * Runs a lambda and logs the execution time in milliseconds, 
-	 * while also managing the returned result.
-	 * @param opperation
-	 * @param t
+	 * The number of points covered by the slices, counting overlapping points once per slice
+	 * @param slices
 	 * @return
 	 */
-	@SuppressWarnings("unchecked")
-	static <T> T time(Timeable timeable) {
-		long startTime = System.currentTimeMillis();
-		Object result = timeable.run();
-		long endTime = System.currentTimeMillis();
-		System.out.println(timeable.runDescription() + " took " + (endTime - startTime) + " milliseconds");
-		
-		return (T)result;
+	static long volume(Collection<? extends Slice<?>> slices) {
+		long volume = 0;
+		for(Slice<?> slice : slices) {
+			volume += slice.volume();
+		}
+		return volume;
 	}
 
 }
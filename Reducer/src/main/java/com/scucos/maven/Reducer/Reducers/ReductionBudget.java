@@ -0,0 +1,179 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits how long a reduction may run, in wall clock time, passes and comparisons.
+ *
+ * The reducers check the budget between units of work and, once it has run out, stop and return
+ * the slices they have at that point. Every reducer only stops where its slices are still a valid,
+ * non-overlapping cover of the input, so an exhausted budget gives a partially reduced answer
+ * rather than a wrong one. What a pass and a comparison are depends on the reducer: one sweep or
+ * retry and one pairwise difference check, signature lookup or slice scanned by a partition.
+ *
+ * Budgets are immutable and reusable, start() begins tracking one reduction.
+ *
+ * The tracker is also how a running reduction is cancelled and watched: once cancelled, or once
+ * the thread checking it is interrupted, it reports itself exhausted like an expired budget does,
+ * and it counts the slices the reducer has merged away so far for progress reports.
+ */
+public final class ReductionBudget {
+
+	/**
+	 * No limits, reducers always run until nothing merges
+	 */
+	public static final ReductionBudget UNLIMITED = new ReductionBudget(Long.MAX_VALUE, Integer.MAX_VALUE, Long.MAX_VALUE);
+
+	private final long nanos;
+	private final int maxPasses;
+	private final long maxComparisons;
+
+	private ReductionBudget(long nanos, int maxPasses, long maxComparisons) {
+		this.nanos = nanos;
+		this.maxPasses = maxPasses;
+		this.maxComparisons = maxComparisons;
+	}
+
+	/**
+	 * A budget limited to the given wall clock time
+	 * @param time
+	 * @return
+	 */
+	public static ReductionBudget of(Duration time) {
+		return UNLIMITED.withTime(time);
+	}
+
+	public ReductionBudget withTime(Duration time) {
+		return new ReductionBudget(time.toNanos(), maxPasses, maxComparisons);
+	}
+
+	public ReductionBudget withMaxPasses(int maxPasses) {
+		return new ReductionBudget(nanos, maxPasses, maxComparisons);
+	}
+
+	public ReductionBudget withMaxComparisons(long maxComparisons) {
+		return new ReductionBudget(nanos, maxPasses, maxComparisons);
+	}
+
+	/**
+	 * Starts the clock for one reduction
+	 * @return
+	 */
+	public Tracker start() {
+		return new Tracker(this);
+	}
+
+	/**
+	 * Tracks the time, passes and comparisons used by one reduction.
+	 * Safe to share between the threads of a parallel reduction.
+	 */
+	public static final class Tracker {
+		private final ReductionBudget budget;
+		private final long deadline;
+		private final AtomicInteger passes = new AtomicInteger();
+		private final AtomicLong comparisons = new AtomicLong();
+		private final AtomicInteger removed = new AtomicInteger();
+		private volatile int inputSlices = 0;
+		private volatile boolean stopped = false;
+		private volatile boolean cancelled = false;
+
+		private Tracker(ReductionBudget budget) {
+			this.budget = budget;
+			long start = System.nanoTime();
+			// Saturate instead of overflowing for unlimited or very long budgets
+			this.deadline = (budget.nanos > Long.MAX_VALUE - start) ? Long.MAX_VALUE : start + budget.nanos;
+		}
+
+		/**
+		 * Records a finished pass
+		 */
+		public void pass() {
+			passes.incrementAndGet();
+		}
+
+		/**
+		 * Records comparisons
+		 * @param count
+		 */
+		public void compare(long count) {
+			comparisons.addAndGet(count);
+		}
+
+		/**
+		 * Records slices merged into another slice or dropped for being contained in one
+		 * @param slices
+		 */
+		public void removed(int slices) {
+			removed.addAndGet(slices);
+		}
+
+		/**
+		 * Records the number of slices the reduction starts from, for progress reports
+		 * @param slices
+		 */
+		public void setInputSlices(int slices) {
+			inputSlices = slices;
+		}
+
+		/**
+		 * Makes the reduction stop at its next check, from any thread.
+		 * Reducer.reduce then throws a CancellationException instead of returning.
+		 */
+		public void cancel() {
+			cancelled = true;
+			stopped = true;
+		}
+
+		/**
+		 * Checked by the reducers before doing more work. Once it returns true the reducer
+		 * stops, and the reduction is marked as not having reached its fixpoint.
+		 * Interrupting the checking thread cancels the reduction.
+		 * @return true if any of the limits has been reached, or the reduction was cancelled
+		 */
+		public boolean exhausted() {
+			if(stopped) {
+				return true;
+			}
+			if(Thread.currentThread().isInterrupted()) {
+				cancel();
+				return true;
+			}
+			if(passes.get() >= budget.maxPasses
+					|| comparisons.get() >= budget.maxComparisons
+					|| (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)) {
+				stopped = true;
+			}
+			return stopped;
+		}
+
+		/**
+		 * @return true if a reducer stopped early because the budget ran out or it was cancelled
+		 */
+		public boolean isStopped() {
+			return stopped;
+		}
+
+		public boolean isCancelled() {
+			return cancelled;
+		}
+
+		/**
+		 * A snapshot of how far the reduction has got
+		 * @return
+		 */
+		public ReductionProgress getProgress() {
+			int input = inputSlices;
+			return new ReductionProgress(input, Math.max(0, input - removed.get()), passes.get(), comparisons.get());
+		}
+
+		public int getPasses() {
+			return passes.get();
+		}
+
+		public long getComparisons() {
+			return comparisons.get();
+		}
+	}
+}
@@ -0,0 +1,105 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Function;
+
+/**
+ * A reduction running in the background, returned by Reducer.reduceAsync.
+ *
+ * Cancelling the handle cancels the reduction's tracker, which every reducer checks between its
+ * units of work (passes, heads, partitions, sweeps), so the reduction stops at its next check and
+ * its thread is freed without converting the abandoned slices back. The handle itself completes
+ * with a CancellationException right away. Interrupting the thread running the reduction has the
+ * same effect, which means an executor's shutdownNow() also cancels it. Worker threads of the
+ * parallel reducers only see cancel(), since interrupting a thread doesn't interrupt the tasks it
+ * waits for.
+ *
+ * getProgress() can be polled from any thread while the reduction runs.
+ *
+ * @param <T>
+ */
+public final class ReductionHandle<T> implements Future<ReductionResult<T>> {
+
+	private final ReductionBudget.Tracker tracker;
+	private final CompletableFuture<ReductionResult<T>> result = new CompletableFuture<>();
+
+	private ReductionHandle(ReductionBudget.Tracker tracker) {
+		this.tracker = tracker;
+	}
+
+	/**
+	 * Starts reducing the Ts on the executor, the budget's clock starts right away
+	 * @param reducer
+	 * @param ts
+	 * @param budget
+	 * @param executor
+	 * @return
+	 */
+	static <T> ReductionHandle<T> start(Reducer<T> reducer, Set<T> ts, ReductionBudget budget, Executor executor) {
+		ReductionHandle<T> handle = new ReductionHandle<>(budget.start());
+		executor.execute(() -> {
+			if(handle.result.isDone()) { // Cancelled before it got a thread
+				return;
+			}
+			try {
+				handle.result.complete(reducer.reduce(ts, handle.tracker));
+			} catch(Throwable e) {
+				handle.result.completeExceptionally(e);
+			}
+		});
+		return handle;
+	}
+
+	/**
+	 * Stops the reduction at its next check and completes this handle with a CancellationException.
+	 * The reducing thread is never interrupted, mayInterruptIfRunning makes no difference.
+	 */
+	@Override
+	public boolean cancel(boolean mayInterruptIfRunning) {
+		tracker.cancel();
+		return result.cancel(mayInterruptIfRunning);
+	}
+
+	@Override
+	public boolean isCancelled() {
+		return result.isCancelled();
+	}
+
+	@Override
+	public boolean isDone() {
+		return result.isDone();
+	}
+
+	@Override
+	public ReductionResult<T> get() throws InterruptedException, ExecutionException {
+		return result.get();
+	}
+
+	@Override
+	public ReductionResult<T> get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+		return result.get(timeout, unit);
+	}
+
+	/**
+	 * A snapshot of how far the reduction has got
+	 * @return
+	 */
+	public ReductionProgress getProgress() {
+		return tracker.getProgress();
+	}
+
+	/**
+	 * The result as a stage to chain on, completing the returned stage doesn't affect the reduction
+	 * @return
+	 */
+	public CompletionStage<ReductionResult<T>> toCompletionStage() {
+		return result.thenApply(Function.identity());
+	}
+}
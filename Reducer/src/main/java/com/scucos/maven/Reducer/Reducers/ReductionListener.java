@@ -0,0 +1,81 @@
+package com.scucos.maven.Reducer.Reducers;
+
+/**
+ * Receives metrics about a reduction as it runs, instead of them being printed to stdout.
+ *
+ * Reducer.reduce reports how long each phase took and the size of its input and output, the
+ * algorithms report their own work as it happens: partitions and their recursion depth, rebuilds
+ * of the collection counts, merges, slices dropped for being contained in another one, and the
+ * passes made until nothing merged. A listener only needs to override the events it cares about.
+ *
+ * Reducers get their listener from Reducer.getListener(), which returns NO_OP unless overridden.
+ * NO_OP's methods are empty, and the input/output volumes are only computed for other listeners,
+ * so reductions without a listener pay nothing for it. Parallel reducers (ShardedReducer,
+ * GraphDistanceReducer, NewRecursiveReducer with a pool) report from several threads at once,
+ * so listeners used with them must be thread-safe.
+ */
+public interface ReductionListener {
+
+	/**
+	 * The listener that ignores every event
+	 */
+	ReductionListener NO_OP = new ReductionListener() {};
+
+	/**
+	 * The phases of Reducer.reduce
+	 */
+	enum Phase {
+		TO_SLICE,
+		REDUCE_SLICES,
+		FROM_SLICE
+	}
+
+	/**
+	 * A phase of Reducer.reduce finished
+	 * @param phase
+	 * @param nanos the wall clock time the phase took
+	 */
+	default void onPhase(Phase phase, long nanos) {}
+
+	/**
+	 * Reducer.reduce finished, volumes are the number of points covered (summed over the slices)
+	 * @param inputSlices
+	 * @param inputVolume
+	 * @param outputSlices
+	 * @param outputVolume
+	 */
+	default void onReduced(int inputSlices, long inputVolume, int outputSlices, long outputVolume) {}
+
+	/**
+	 * A working set was split on its most common collection
+	 * @param depth the recursion depth of the split, 0 for the whole input
+	 * @param containingMost the number of slices holding the collection
+	 * @param withoutMost the number of slices that don't
+	 */
+	default void onPartition(int depth, int containingMost, int withoutMost) {}
+
+	/**
+	 * The collection counts were rebuilt from scratch over a working set
+	 * @param slices the size of the working set
+	 */
+	default void onCountsBuilt(int slices) {}
+
+	/**
+	 * Slices were merged into their neighbours
+	 * @param slices the number of slices merged away
+	 */
+	default void onMerge(int slices) {}
+
+	/**
+	 * Slices were dropped because another slice already contains them
+	 * @param slices the number of slices dropped
+	 */
+	default void onContainmentDrop(int slices) {}
+
+	/**
+	 * A pass over the working set finished, reducers keep making passes until one merges nothing
+	 * @param slicesBefore
+	 * @param slicesAfter
+	 */
+	default void onPass(int slicesBefore, int slicesAfter) {}
+}
@@ -0,0 +1,60 @@
+package com.scucos.maven.Reducer.Reducers;
+
+/**
+ * A snapshot of how far a running reduction has got, see ReductionHandle.getProgress().
+ *
+ * The slices left are the input slices minus the ones merged into another slice or dropped for
+ * being contained in one so far. Merges never change the number of points covered, so the
+ * reduction is measured in slices: it's the share of the input that has been merged away.
+ * The input size is only known once Reducer.reduce has turned the input into slices, until then
+ * (or when reduceSlices is called directly) it is 0.
+ */
+public final class ReductionProgress {
+
+	private final int inputSlices;
+	private final int slices;
+	private final int passes;
+	private final long comparisons;
+
+	public ReductionProgress(int inputSlices, int slices, int passes, long comparisons) {
+		this.inputSlices = inputSlices;
+		this.slices = slices;
+		this.passes = passes;
+		this.comparisons = comparisons;
+	}
+
+	public int getInputSlices() {
+		return inputSlices;
+	}
+
+	/**
+	 * @return the number of slices left
+	 */
+	public int getSlices() {
+		return slices;
+	}
+
+	/**
+	 * @return the number of passes finished, what a pass is depends on the reducer
+	 */
+	public int getPasses() {
+		return passes;
+	}
+
+	public long getComparisons() {
+		return comparisons;
+	}
+
+	/**
+	 * @return the share of the input slices merged away so far, between 0 and 1
+	 */
+	public double getReduction() {
+		return (inputSlices == 0) ? 0 : 1 - (double) slices / inputSlices;
+	}
+
+	@Override
+	public String toString() {
+		return String.format("%d of %d slices left (%.1f%% reduced) after %d passes and %d comparisons",
+				slices, inputSlices, getReduction() * 100, passes, comparisons);
+	}
+}
@@ -0,0 +1,32 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.Set;
+
+/**
+ * The outcome of a budgeted reduction: the reduced objects and whether the reducer
+ * finished (reached its fixpoint) or stopped early because the budget ran out.
+ * Either way the reduced objects cover exactly the input, without overlap.
+ *
+ * @param <T>
+ */
+public class ReductionResult<T> {
+
+	private final Set<T> reduced;
+	private final boolean fixpoint;
+
+	public ReductionResult(Set<T> reduced, boolean fixpoint) {
+		this.reduced = reduced;
+		this.fixpoint = fixpoint;
+	}
+
+	public Set<T> getReduced() {
+		return reduced;
+	}
+
+	/**
+	 * @return true if the reducer ran until nothing more merged, false if the budget cut it short
+	 */
+	public boolean isFixpoint() {
+		return fixpoint;
+	}
+}
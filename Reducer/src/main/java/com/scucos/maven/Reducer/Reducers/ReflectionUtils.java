@@ -1,14 +1,32 @@
 package com.scucos.maven.Reducer.Reducers;
 
+import java.lang.reflect.Constructor;
 import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import com.scucos.maven.Reducer.Codecs.Dimension;
 
 /**
- * Utility class for handling common reflection tasks
+ * Utility class for handling common reflection tasks.
+ * Fields and constructors are looked up once per class and cached,
+ * so only the Field.get / Field.set calls are paid per object.
  * @author SCucos
  */
 public class ReflectionUtils {
 
+	private static final Map<Class<?>, List<Field>> dimensionFields = new ConcurrentHashMap<>();
+
+	private static final Map<Class<?>, Constructor<?>> constructors = new ConcurrentHashMap<>();
+
+	private static final Map<Class<?>, Map<String, Field>> namedFields = new ConcurrentHashMap<>();
+
 	/**
 	 * Exception for when Object construction fails
 	 * @author SCucos
@@ -23,7 +41,36 @@ public class ReflectionUtils {
 	}
 
 	/**
-	 * Given a Class<T> instance and a map of field names to values, 
+	 * Returns the accessible fields of the given class that make up the dimensions of its slices.
+	 * Only the top level fields are considered (super fields are ignored). If any of them is
+	 * annotated with @Dimension only the annotated fields are returned, otherwise every
+	 * non static Collection field is.
+	 * @param tClass
+	 * @return
+	 */
+	public static List<Field> getDimensionFields(Class<?> tClass) {
+		return dimensionFields.computeIfAbsent(tClass, c -> {
+			List<Field> collectionFields = new ArrayList<>();
+			List<Field> annotatedFields = new ArrayList<>();
+
+			for(Field field : c.getDeclaredFields()) {
+				if(Modifier.isStatic(field.getModifiers()) || !Collection.class.isAssignableFrom(field.getType())) {
+					continue;
+				}
+
+				field.setAccessible(true);
+				collectionFields.add(field);
+				if(field.isAnnotationPresent(Dimension.class)) {
+					annotatedFields.add(field);
+				}
+			}
+
+			return Collections.unmodifiableList(annotatedFields.isEmpty() ? collectionFields : annotatedFields);
+		});
+	}
+
+	/**
+	 * Given a Class<T> instance and a map of field names to values,
 	 * creates a new T instance with the desired fields set
 	 * @param <T> The type to return
 	 * @param tClass An instance of the provided types class
@@ -32,28 +79,28 @@ public class ReflectionUtils {
 	 * @throws ObjectConstructionException
 	 */
 	public static <T> T createObjectWithFields(Class<T> tClass, Map<String, ? extends Object> fields) throws ObjectConstructionException {
-		
+
 		if(tClass == null) {
 			throw new ObjectConstructionException("Provided with null tClass argument");
 		}
-		
+
 		try {
-			final T t = (T) tClass.newInstance();
-			
+			final T t = getConstructor(tClass).newInstance();
+
 			fields.forEach((fieldName, fieldValue) -> {
 				if (!setField(t, fieldName, fieldValue)) {
 					throw new ObjectConstructionException("Unable to set field '" + fieldName + "' while constructing object");
 				}
 			});
-			
+
 			return t;
-		} catch (InstantiationException e) {
+		} catch (NoSuchMethodException | InstantiationException e) {
 			throw new ObjectConstructionException("Class '" + tClass.toString() + "' does not have empty constructor\n" + e.toString());
-		} catch (IllegalAccessException e) {
+		} catch (IllegalAccessException | InvocationTargetException e) {
 			throw new ObjectConstructionException("Unable to create object of type '" + tClass.getCanonicalName() + "'\n" + e.toString());
 		}
 	}
-	
+
 	/**
 	 * If possible, sets the given field to a new value
 	 * @param targetObject The object to work on
@@ -62,30 +109,55 @@ public class ReflectionUtils {
 	 * @return true if the field was successfully set, false otherwise
 	 */
 	public static boolean setField(Object targetObject, String fieldName, Object fieldValue) {
-	    Field field;
-	    try {
-	        field = targetObject.getClass().getDeclaredField(fieldName);
-	    } catch (NoSuchFieldException e) {
-	        field = null;
-	    }
-	    Class<?> superClass = targetObject.getClass().getSuperclass();
-	    while (field == null && superClass != null) {
-	        try {
-	            field = superClass.getDeclaredField(fieldName);
-	        } catch (NoSuchFieldException e) {
-	            superClass = superClass.getSuperclass();
-	        }
-	    }
+	    Field field = findField(targetObject.getClass(), fieldName);
 	    if (field == null) {
 	        return false;
 	    }
-	    
+
 	    try {
-	    	field.setAccessible(true);
 	        field.set(targetObject, fieldValue);
 	        return true;
 	    } catch (IllegalAccessException e) {
 	        return false;
 	    }
 	}
+
+	@SuppressWarnings("unchecked")
+	private static <T> Constructor<T> getConstructor(Class<T> tClass) throws NoSuchMethodException {
+		Constructor<?> constructor = constructors.get(tClass);
+		if(constructor == null) {
+			constructor = tClass.getDeclaredConstructor();
+			constructor.setAccessible(true);
+			constructors.put(tClass, constructor);
+		}
+		return (Constructor<T>) constructor;
+	}
+
+	/**
+	 * Finds the named field on the class or one of its super classes, and makes it accessible
+	 * @return the field, or null if no class in the hierarchy declares it
+	 */
+	private static Field findField(Class<?> targetClass, String fieldName) {
+		Map<String, Field> fields = namedFields.computeIfAbsent(targetClass, c -> new ConcurrentHashMap<>());
+		Field field = fields.get(fieldName);
+		if(field != null) {
+			return field;
+		}
+
+	    Class<?> currentClass = targetClass;
+	    while (field == null && currentClass != null) {
+	        try {
+	            field = currentClass.getDeclaredField(fieldName);
+	        } catch (NoSuchFieldException e) {
+	            currentClass = currentClass.getSuperclass();
+	        }
+	    }
+	    if (field == null) {
+	        return null;
+	    }
+
+	    field.setAccessible(true);
+	    fields.put(fieldName, field);
+	    return field;
+	}
 }
@@ -1,7 +1,10 @@
 package com.scucos.maven.Reducer.Reducers;
 
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.Iterator;
 import java.util.List;
+import java.util.Map;
 import java.util.PriorityQueue;
 import java.util.Set;
 
@@ -9,52 +12,84 @@ import com.scucos.maven.Reducer.Slice;
 
 public abstract class RowByRowReducer<T> implements Reducer<T> {
 
-	@SuppressWarnings({ "serial", "unchecked", "rawtypes" })
 	@Override
 	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
-		PriorityQueue<Slice<T>> reduced = new PriorityQueue<>();
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
+	
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		ReductionListener listener = getListener();
+		// The categories of every reduced slice that already hold a collection of its own
+		Map<Slice<T>, Set<Object>> detached = new HashMap<>();
+		// One pass per iteration, until a pass neither merges nor drops a slice
+		while(true) {
+			PriorityQueue<Slice<T>> reduced = new PriorityQueue<>();
 		
-		boolean anyReduction = false;
+			boolean anyReduction = false;
 		
-		for(Slice<T> slice : slices) {
-			boolean containedIn = false;
-			boolean merged = false;
-			for(Slice<T> reducedSlice : reduced) {
-				if(slice.containedIn(reducedSlice)) {
-					containedIn = true;
-					anyReduction = true;
+			Iterator<Slice<T>> iterator = slices.iterator();
+			while(iterator.hasNext()) {
+				if(tracker.exhausted()) {
+					// Out of budget, the rest of the slices are kept as they are
+					iterator.forEachRemaining(reduced::add);
 					break;
 				}
+			
+				Slice<T> slice = iterator.next();
+				boolean containedIn = false;
+				boolean merged = false;
+				int compared = 0;
+				for(Slice<T> reducedSlice : reduced) {
+					compared += 1;
+					if(slice.containedIn(reducedSlice)) {
+						containedIn = true;
+						anyReduction = true;
+						break;
+					}
 				
-				// If they only differ in one category
-				List<Object> differentCategories = slice.asymetricDifference(reducedSlice);
-				if(differentCategories.size() == 1) {
-					// merge them
-					Object unionCategory = differentCategories.get(0);
-					reducedSlice.unionAdd(unionCategory, slice);
-					merged = true;
-					anyReduction = true;
-					break;
+					// If they only differ in one category
+					List<Object> differentCategories = slice.asymetricDifference(reducedSlice);
+					if(differentCategories.size() == 1) {
+						// merge them
+						Object unionCategory = differentCategories.get(0);
+						if(detached.computeIfAbsent(reducedSlice, s -> new HashSet<>()).add(unionCategory)) {
+							// The collection may belong to the input objects or be shared with other slices
+							reducedSlice.detachEntry((String) unionCategory);
+						}
+						reducedSlice.unionAdd(unionCategory, slice);
+						merged = true;
+						anyReduction = true;
+						break;
+					}
 				}
-			}
 			
-			if(containedIn) {
-				// The slice was a duplicate and was already contained in another slice
-				continue;
+				tracker.compare(compared);
+			
+				if(containedIn) {
+					// The slice was a duplicate and was already contained in another slice
+					listener.onContainmentDrop(1);
+					tracker.removed(1);
+					continue;
+				}
+			
+				if(merged) {
+					// The slice was merged into another slice
+					listener.onMerge(1);
+					tracker.removed(1);
+					continue;
+				} else {
+					// The slice was not contained in another slice or merged, so add it to reduced
+					reduced.add(slice);
+				}
 			}
 			
-			if(merged) {
-				// The slice was merged into another slice
-				continue;
-			} else {
-				// The slice was not contained in another slice or merged, so add it to reduced
-				reduced.add(slice);
+			listener.onPass(slices.size(), reduced.size());
+			tracker.pass();
+			if(!anyReduction || tracker.isStopped()) {
+				return new HashSet<>(reduced);
 			}
+			slices = new HashSet<>(reduced);
 		}
-		
-		if(anyReduction) {
-			return reduceSlices(new HashSet() {{addAll(reduced);}});
-		}
-		return new HashSet<Slice<T>>() {{ addAll(reduced);}};
 	}
 }
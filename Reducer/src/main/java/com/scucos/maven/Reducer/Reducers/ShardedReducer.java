@@ -0,0 +1,176 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+
+import com.scucos.maven.Reducer.Slice;
+import com.scucos.maven.Reducer.Slice.SliceConstructionException;
+import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
+
+/**
+ * Wraps any Reducer<T> and runs it on hash partitions (shards) of the input in parallel.
+ *
+ * The slices are partitioned on the hash of their collection in one category, the shard key,
+ * so slices sharing a shard key value always land in the same shard. Each shard is handed to
+ * the delegate's reduceSlices as a separate task, which means the delegate does not have to be
+ * thread-safe itself, only free of shared mutable state between calls. Shard results that only
+ * differ in the shard key are then merged in a final pass, followed by any other distance-1 merges
+ * the cross-shard merge made possible.
+ *
+ * Runtime complexity:
+ * Let n be the number of input slices, d the number of categories, s the number of shards and
+ * R(m) the delegate's cost on m slices. Partitioning is O(n) hashing, the shards cost about
+ * R(n / s) each spread over the pool's threads, and the merge pass is O(p * r * d) over the r
+ * reduced slices (see SliceNeighborIndex).
+ *
+ * toSlice, fromSlice and getListener are forwarded to the delegate, so custom mappings keep working.
+ *
+ * @param <T>
+ */
+public class ShardedReducer<T> implements Reducer<T> {
+
+	private static final int SHARD_KEY_SAMPLE = 10000;
+
+	private final Reducer<T> delegate;
+	private final String shardCategory;
+	private final int shards;
+	private final ForkJoinPool pool;
+
+	/**
+	 * Shards on an automatically chosen category, four shards per core of the common pool
+	 * @param delegate
+	 */
+	public ShardedReducer(Reducer<T> delegate) {
+		this(delegate, null, ForkJoinPool.commonPool().getParallelism() * 4, ForkJoinPool.commonPool());
+	}
+
+	/**
+	 * @param delegate the reducer run on each shard
+	 * @param shardCategory the category to shard on, or null to pick one automatically
+	 * @param shards the number of shards
+	 * @param pool the pool the shards are reduced on
+	 */
+	public ShardedReducer(Reducer<T> delegate, String shardCategory, int shards, ForkJoinPool pool) {
+		if(shards < 1) {
+			throw new IllegalArgumentException("At least one shard is needed, got " + shards);
+		}
+		this.delegate = delegate;
+		this.shardCategory = shardCategory;
+		this.shards = shards;
+		this.pool = pool;
+	}
+
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
+
+	/**
+	 * Every shard and the merge pass share the tracker, so the budget covers the whole reduction
+	 */
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		if(slices.size() <= 1 || shards == 1) {
+			return delegate.reduceSlices(slices, tracker);
+		}
+
+		String shardKey = shardCategory != null ? shardCategory : chooseShardCategory(slices);
+		if(shardKey == null) {
+			return delegate.reduceSlices(slices, tracker);
+		}
+
+		List<Set<Slice<T>>> partitions = new ArrayList<>(shards);
+		for(int i = 0; i < shards; i++) {
+			partitions.add(new HashSet<>());
+		}
+		for(Slice<T> slice : slices) {
+			int hash = slice.getEntry(shardKey).hashCode();
+			partitions.get(Math.floorMod(hash ^ (hash >>> 16), shards)).add(slice);
+		}
+
+		List<ForkJoinTask<Set<Slice<T>>>> tasks = new ArrayList<>(shards);
+		for(Set<Slice<T>> partition : partitions) {
+			if(!partition.isEmpty()) {
+				tasks.add(pool.submit(() -> delegate.reduceSlices(partition, tracker)));
+			}
+		}
+
+		List<Slice<T>> reduced = new ArrayList<>();
+		for(ForkJoinTask<Set<Slice<T>>> task : tasks) {
+			reduced.addAll(task.join());
+		}
+
+		return mergeShards(reduced, shardKey, tracker);
+	}
+
+	/**
+	 * Merges the shard results that only differ in the shard key, then keeps merging distance-1
+	 * neighbours until nothing merges
+	 * @param reduced
+	 * @param shardKey
+	 * @param tracker
+	 * @return
+	 */
+	Set<Slice<T>> mergeShards(Collection<Slice<T>> reduced, String shardKey, ReductionBudget.Tracker tracker) {
+		SliceNeighborIndex<T> index = new SliceNeighborIndex<>(reduced, getListener(), tracker);
+		index.mergeAlong(shardKey);
+		index.mergeUntilFixpoint();
+		return new HashSet<>(index.getSlices());
+	}
+
+	/**
+	 * Picks the category with the fewest distinct collections (over a sample of the slices) that can
+	 * still fill every shard. Fewer distinct shard key values means bigger per-value groups, whose shard
+	 * results line up and merge well in the cross-shard pass. If no category has enough distinct
+	 * collections, the one with the most is used.
+	 * @param slices
+	 * @return the category, or null if the slices have none
+	 */
+	protected String chooseShardCategory(Set<Slice<T>> slices) {
+		Set<String> categories = slices.iterator().next().getCategories();
+
+		String best = null;
+		int bestDistinct = -1;
+		for(String category : categories) {
+			Set<Collection<?>> distinct = new HashSet<>();
+			Iterator<Slice<T>> iterator = slices.iterator();
+			for(int i = 0; i < SHARD_KEY_SAMPLE && iterator.hasNext(); i++) {
+				distinct.add(iterator.next().getEntry(category));
+			}
+
+			boolean fillsShards = distinct.size() >= shards;
+			boolean bestFillsShards = bestDistinct >= shards;
+			boolean better = (fillsShards && (!bestFillsShards || distinct.size() < bestDistinct))
+					|| (!fillsShards && !bestFillsShards && distinct.size() > bestDistinct);
+			if(better) {
+				bestDistinct = distinct.size();
+				best = category;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * The delegate's listener, so the shards and the merge pass report to the same place
+	 */
+	@Override
+	public ReductionListener getListener() {
+		return delegate.getListener();
+	}
+
+	@Override
+	public Slice<T> toSlice(T t) throws SliceConstructionException {
+		return delegate.toSlice(t);
+	}
+
+	@Override
+	public T fromSlice(Slice<T> slice) throws ObjectConstructionException {
+		return delegate.fromSlice(slice);
+	}
+}
@@ -0,0 +1,169 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Finds and merges distance-1 neighbours without comparing slices pairwise.
+ *
+ * Two slices are distance-1 along category c exactly when they hold equal collections in every
+ * other category. Hashing each slice by that "all categories except c" signature puts all of its
+ * neighbours along c in the same bucket, and since a bucket only differs in c, every slice in it can
+ * be folded into one by unioning c. A sweep along one category is therefore one O(n * d) hashing
+ * pass instead of O(n^2) difference checks.
+ *
+ * Merging inside a bucket never creates holes: the bucket's slices share the other d - 1 dimensions,
+ * so the union of c covers exactly the union of their points. Slices that are contained in another
+ * slice they differ from in two or more categories are not detected, which only matters when the
+ * input slices overlap.
+ *
+ * @param <T>
+ */
+public class SliceNeighborIndex<T> {
+
+	private final List<String> categories;
+
+	// The budget is checked once every BUDGET_CHECK_INTERVAL slices of a sweep
+	private static final int BUDGET_CHECK_INTERVAL = 1024;
+
+	private final ReductionListener listener;
+
+	private final ReductionBudget.Tracker tracker;
+
+	private Collection<Slice<T>> slices;
+
+	public SliceNeighborIndex(Collection<Slice<T>> slices) {
+		this(slices, ReductionListener.NO_OP);
+	}
+
+	/**
+	 * @param slices
+	 * @param listener receives the merges and sweeps
+	 */
+	public SliceNeighborIndex(Collection<Slice<T>> slices, ReductionListener listener) {
+		this(slices, listener, ReductionBudget.UNLIMITED.start());
+	}
+
+	/**
+	 * @param slices
+	 * @param listener receives the merges and sweeps
+	 * @param tracker sweeps stop, leaving the rest of the slices unmerged, once its budget is exhausted
+	 */
+	public SliceNeighborIndex(Collection<Slice<T>> slices, ReductionListener listener, ReductionBudget.Tracker tracker) {
+		this.listener = listener;
+		this.tracker = tracker;
+		this.slices = new ArrayList<>(slices);
+		this.categories = slices.isEmpty()
+				? new ArrayList<>()
+				: new ArrayList<>(slices.iterator().next().getCategories());
+	}
+
+	/**
+	 * The categories a sweep can be run along, in a fixed order
+	 * @return
+	 */
+	public List<String> getCategories() {
+		return categories;
+	}
+
+	/**
+	 * The current (partially) merged slices
+	 * @return
+	 */
+	public Collection<Slice<T>> getSlices() {
+		return slices;
+	}
+
+	/**
+	 * Buckets the slices by their signature without the given category and merges each bucket into a single slice.
+	 * O(n * d) signature hashing plus the cost of the unions.
+	 * If the budget runs out part way, the slices not looked at yet are kept as they are.
+	 * @param category
+	 * @return the number of slices that were merged away
+	 */
+	public int mergeAlong(String category) {
+		Map<SliceSignature, Slice<T>> buckets = new HashMap<>();
+		Set<Slice<T>> detached = new HashSet<>();
+		int merges = 0;
+		int seen = 0;
+
+		Iterator<Slice<T>> iterator = slices.iterator();
+		while(iterator.hasNext()) {
+			if(seen % BUDGET_CHECK_INTERVAL == 0) {
+				tracker.compare(seen == 0 ? 0 : BUDGET_CHECK_INTERVAL);
+				if(tracker.exhausted()) {
+					break;
+				}
+			}
+			seen += 1;
+
+			Slice<T> slice = iterator.next();
+			Slice<T> bucket = buckets.putIfAbsent(SliceSignature.without(slice, categories, category), slice);
+			if(bucket != null) {
+				if(detached.add(bucket)) {
+					// Reducers such as NewRecursiveReducer hand the same collection to many slices
+					bucket.detachEntry(category);
+				}
+				bucket.unionAdd(category, slice);
+				merges += 1;
+			}
+		}
+
+		tracker.compare(seen % BUDGET_CHECK_INTERVAL);
+
+		if(merges > 0) {
+			Collection<Slice<T>> merged = buckets.values();
+			if(iterator.hasNext()) {
+				merged = new ArrayList<>(merged);
+				iterator.forEachRemaining(merged::add);
+			}
+			slices = merged;
+			listener.onMerge(merges);
+			tracker.removed(merges);
+		}
+		return merges;
+	}
+
+	/**
+	 * Counts how many slices a sweep along the given category would merge away, without merging them
+	 * @param category
+	 * @return
+	 */
+	public int countMergesAlong(String category) {
+		Set<SliceSignature> buckets = new HashSet<>();
+		for(Slice<T> slice : slices) {
+			buckets.add(SliceSignature.without(slice, categories, category));
+		}
+		tracker.compare(slices.size());
+		return slices.size() - buckets.size();
+	}
+
+	/**
+	 * Sweeps over the categories round robin until a sweep along every category in a row merges nothing,
+	 * or the budget runs out.
+	 * @return the total number of slices that were merged away
+	 */
+	public int mergeUntilFixpoint() {
+		int merges = 0;
+		int idleSweeps = 0;
+
+		for(int i = 0; idleSweeps < categories.size() && slices.size() > 1 && !tracker.exhausted(); i = (i + 1) % categories.size()) {
+			int before = slices.size();
+			int sweepMerges = mergeAlong(categories.get(i));
+			listener.onPass(before, slices.size());
+			tracker.pass();
+			merges += sweepMerges;
+			idleSweeps = (sweepMerges == 0) ? idleSweeps + 1 : 0;
+		}
+
+		return merges;
+	}
+}
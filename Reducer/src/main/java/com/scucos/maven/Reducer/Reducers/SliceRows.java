@@ -0,0 +1,93 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.Set;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Working representation of the recursive reducers.
+ *
+ * The slices live in one array and every recursion level works on a range [from, to) of it.
+ * Partitioning swaps the slices holding a collection to the front of the range, quicksort style,
+ * and a level returns how many slices it reduced its range to, compacted at the range's start.
+ *
+ * Dimensions are removed with a width cursor instead of deleting map entries: the categories a
+ * level still works on are order[0, width). Before reducing the partition holding a collection,
+ * its category is swapped to order[width - 1], so the partition sees width - 1 categories and the
+ * slices themselves are never changed. Deeper levels only permute positions below their own width,
+ * so every level finds the same set of categories in order[0, width) when they return.
+ */
+final class SliceRows {
+
+	private SliceRows() {
+	}
+
+	@SuppressWarnings({ "unchecked", "rawtypes" })
+	static <T> Slice<T>[] of(Collection<Slice<T>> slices) {
+		return slices.toArray(new Slice[slices.size()]);
+	}
+
+	/**
+	 * The first count slices
+	 */
+	static <T> Set<Slice<T>> toSet(Slice<T>[] rows, int count) {
+		Set<Slice<T>> slices = new HashSet<>();
+		for(int i = 0; i < count; i++) {
+			slices.add(rows[i]);
+		}
+		return slices;
+	}
+
+	/**
+	 * The categories of the slices, in the order of the first one
+	 */
+	static String[] categories(Slice<?>[] rows) {
+		if(rows.length == 0) {
+			return new String[0];
+		}
+		return rows[0].getCategories().toArray(new String[0]);
+	}
+
+	/**
+	 * Moves the slices of [from, to) holding the collection id to the front of the range
+	 * @return the end of the slices holding it
+	 */
+	static <T> int partition(Slice<T>[] rows, int from, int to, CollectionCounts counts, int id) {
+		String category = counts.category(id);
+		int mid = from;
+		for(int i = from; i < to; i++) {
+			if(counts.id(category, rows[i].getEntry(category)) == id) {
+				Slice<T> slice = rows[i];
+				rows[i] = rows[mid];
+				rows[mid++] = slice;
+			}
+		}
+		return mid;
+	}
+
+	/**
+	 * Moves the secondCount slices starting at second right behind the firstCount slices starting at from
+	 * @return the number of joined slices, starting at from
+	 */
+	static <T> int join(Slice<T>[] rows, int from, int firstCount, int second, int secondCount) {
+		if(from + firstCount != second) {
+			System.arraycopy(rows, second, rows, from + firstCount, secondCount);
+		}
+		return firstCount + secondCount;
+	}
+
+	/**
+	 * Swaps the category to order[width - 1], out of the first width - 1 categories
+	 */
+	static void removeDimension(String[] order, int width, String category) {
+		for(int i = 0; i < width; i++) {
+			if(order[i].equals(category)) {
+				order[i] = order[width - 1];
+				order[width - 1] = category;
+				return;
+			}
+		}
+	}
+}
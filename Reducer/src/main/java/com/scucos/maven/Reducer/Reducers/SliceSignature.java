@@ -0,0 +1,53 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * The collections of every category of a slice but one, in a fixed category order, with the hash computed up front.
+ * Two slices with equal signatures without category c are distance-1 (or equal) along c.
+ */
+final class SliceSignature {
+
+	private final Collection<?>[] parts;
+	private final int hash;
+
+	private SliceSignature(Collection<?>[] parts) {
+		this.parts = parts;
+		this.hash = Arrays.hashCode(parts);
+	}
+
+	/**
+	 * @param slice the slice to sign
+	 * @param categories all of the slice's categories, in the order every signature is built with
+	 * @param without the category left out of the signature
+	 * @return
+	 */
+	static SliceSignature without(Slice<?> slice, List<String> categories, String without) {
+		Collection<?>[] parts = new Collection<?>[categories.size() - 1];
+		int i = 0;
+		for(String category : categories) {
+			if(!category.equals(without)) {
+				parts[i++] = slice.getEntry(category);
+			}
+		}
+		return new SliceSignature(parts);
+	}
+
+	@Override
+	public int hashCode() {
+		return hash;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if(!(o instanceof SliceSignature)) {
+			return false;
+		}
+		SliceSignature other = (SliceSignature) o;
+		return hash == other.hash && Arrays.equals(parts, other.parts);
+	}
+}
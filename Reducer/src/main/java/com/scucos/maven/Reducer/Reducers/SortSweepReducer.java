@@ -0,0 +1,176 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.scucos.maven.Reducer.Slice;
+
+/**
+ * Reducer with a predictable runtime, built from one sort and one linear sweep per category.
+ *
+ * Every collection is encoded as an int id per category, so a slice becomes a row of d ids.
+ * To merge along a category c the rows are sorted lexicographically on every id except c's,
+ * which makes the slices that only differ in c adjacent, and a single sweep unions each run of
+ * equal rows into its first slice. The merged collections get their ids, and the same is done for
+ * the next category, from the last category in categoryOrder to the first.
+ *
+ * say we have a full 2x2x2 cube of points ordered [x, y, z]
+ * The sweep along z merges the 4 pairs of points sharing x and y into 4 lines, the sweep along y
+ * merges the 2 pairs of lines sharing x into 2 planes, and the sweep along x merges them into the cube.
+ *
+ * Runs are formed by equal ids, which don't depend on the input's iteration order, so equal
+ * inputs always give the same slices. Each category is swept exactly once, so the result is not
+ * always a fixpoint: merges along an earlier category can make new merges along a later one possible.
+ *
+ * Runtime complexity:
+ * Let n be the number of input slices and d be the number of categories per slice.
+ * Encoding is O(n * d) hash lookups (plus hashing the merged collections). Each of the d sweeps
+ * sorts at most n rows, which is O(n log n) comparisons of at most d - 1 ids, and sweeps them once.
+ * The total is O(d * n log n) comparisons, or O(n log n * d^2) id reads when rows share long prefixes,
+ * independent of how dense the input is. Space usage is O(n * d) for the rows and the id maps.
+ *
+ * @param <T>
+ */
+public abstract class SortSweepReducer<T> implements Reducer<T> {
+
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices) {
+		return reduceSlices(slices, ReductionBudget.UNLIMITED.start());
+	}
+
+	/**
+	 * Checks the budget before every sweep
+	 */
+	@Override
+	public Set<Slice<T>> reduceSlices(Set<Slice<T>> slices, ReductionBudget.Tracker tracker) {
+		if(slices.size() <= 1) {
+			return slices;
+		}
+
+		List<String> categories = categoryOrder(slices);
+		int width = categories.size();
+
+		List<Map<Collection<?>, Integer>> ids = new ArrayList<>(width);
+		for(int c = 0; c < width; c++) {
+			ids.add(new HashMap<>());
+		}
+
+		List<Row<T>> rows = new ArrayList<>(slices.size());
+		for(Slice<T> slice : slices) {
+			int[] row = new int[width];
+			for(int c = 0; c < width; c++) {
+				row[c] = idOf(ids.get(c), slice.getEntry(categories.get(c)));
+			}
+			rows.add(new Row<>(slice, row));
+		}
+
+		for(int along = width - 1; along >= 0 && rows.size() > 1 && !tracker.exhausted(); along--) {
+			int before = rows.size();
+			rows = sweep(rows, along, categories.get(along), ids.get(along));
+			tracker.removed(before - rows.size());
+			tracker.pass();
+			tracker.compare(rows.size());
+		}
+
+		Set<Slice<T>> reduced = new HashSet<>();
+		for(Row<T> row : rows) {
+			reduced.add(row.slice);
+		}
+		return reduced;
+	}
+
+	/**
+	 * The order the categories are compared in, the last one is swept first.
+	 * By default the categories with the fewest distinct collections come first (ties by name),
+	 * so the first sweep goes along the category with the most and has the most to merge.
+	 * @param slices
+	 * @return
+	 */
+	protected List<String> categoryOrder(Set<Slice<T>> slices) {
+		Map<String, Set<Collection<?>>> distinct = new HashMap<>();
+		for(Slice<T> slice : slices) {
+			for(String category : slice.getCategories()) {
+				distinct.computeIfAbsent(category, c -> new HashSet<>()).add(slice.getEntry(category));
+			}
+		}
+
+		List<String> categories = new ArrayList<>(distinct.keySet());
+		categories.sort(Comparator
+				.comparingInt((String c) -> distinct.get(c).size())
+				.thenComparing(Comparator.naturalOrder()));
+		return categories;
+	}
+
+	/**
+	 * Sorts the rows on every id but along's and unions each run of equal rows into its first slice
+	 */
+	private List<Row<T>> sweep(List<Row<T>> rows, int along, String category, Map<Collection<?>, Integer> alongIds) {
+		rows.sort((a, b) -> compareExcept(a.ids, b.ids, along));
+
+		List<Row<T>> swept = new ArrayList<>();
+		List<Row<T>> merged = new ArrayList<>();
+		Row<T> run = null;
+		boolean runMerged = false;
+
+		for(Row<T> row : rows) {
+			if(run != null && compareExcept(run.ids, row.ids, along) == 0) {
+				if(!runMerged) {
+					// The collection may be shared with other slices
+					run.slice.detachEntry(category);
+					merged.add(run);
+					runMerged = true;
+				}
+				run.slice.unionAdd(category, row.slice);
+			} else {
+				run = row;
+				runMerged = false;
+				swept.add(row);
+			}
+		}
+
+		for(Row<T> row : merged) {
+			row.ids[along] = idOf(alongIds, row.slice.getEntry(category));
+		}
+
+		getListener().onMerge(rows.size() - swept.size());
+		getListener().onPass(rows.size(), swept.size());
+		return swept;
+	}
+
+	private static int idOf(Map<Collection<?>, Integer> ids, Collection<?> objects) {
+		Integer id = ids.get(objects);
+		if(id == null) {
+			id = ids.size();
+			ids.put(objects, id);
+		}
+		return id;
+	}
+
+	private static int compareExcept(int[] a, int[] b, int except) {
+		for(int c = 0; c < a.length; c++) {
+			if(c != except && a[c] != b[c]) {
+				return Integer.compare(a[c], b[c]);
+			}
+		}
+		return 0;
+	}
+
+	/**
+	 * A slice and the ids of its collections, in category order
+	 */
+	private static class Row<T> {
+		final Slice<T> slice;
+		final int[] ids;
+
+		Row(Slice<T> slice, int[] ids) {
+			this.slice = slice;
+			this.ids = ids;
+		}
+	}
+}
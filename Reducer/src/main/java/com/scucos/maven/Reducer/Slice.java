@@ -4,10 +4,12 @@ import java.lang.reflect.Field;
 import java.util.Collection;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import com.scucos.maven.Reducer.Codecs.SliceCodecs;
 import com.scucos.maven.Reducer.Reducers.ReflectionUtils;
 import com.scucos.maven.Reducer.Reducers.ReflectionUtils.ObjectConstructionException;
 
@@ -34,30 +36,51 @@ public class Slice<T> implements Comparable<Slice<T>> {
 	
 	// Constructor
 
+	/**
+	 * Creates an empty slice of the given type, categories are added with addEntry.
+	 * Used by SliceCodecs that know the type's dimensions ahead of time.
+	 * @param tClass
+	 */
+	public Slice(Class<T> tClass) {
+		this.tClass = tClass;
+	}
+
+	/**
+	 * Creates a slice with one category per dimension field of t, found through reflection.
+	 * Prefer SliceCodecs.forClass(tClass).toSlice(t), which avoids reflection when a codec was generated.
+	 * @param t
+	 * @throws SliceConstructionException
+	 */
 	@SuppressWarnings("unchecked")
 	public Slice(T t) throws SliceConstructionException {
 		
 		this.tClass = (Class<T>) t.getClass();
 		
 		//Only work on the top level fields (ignore super fields)
-		for(Field field : tClass.getDeclaredFields()) {
-			
-			String name = field.getName();
-			Class<?> fieldClass = field.getType();
-			Class<?> collectionClass = Collection.class;
-			boolean isCollection = collectionClass.isAssignableFrom(fieldClass);
-			if(isCollection) {
-				field.setAccessible(true);
-				
-				try {
-					sliceMap.put(name, (Collection<Object>) field.get(t));
-				} catch (IllegalArgumentException | IllegalAccessException e) {
-					throw new SliceConstructionException(e.getMessage());
-				}
+		for(Field field : ReflectionUtils.getDimensionFields(tClass)) {
+			try {
+				sliceMap.put(field.getName(), (Collection<Object>) field.get(t));
+			} catch (IllegalArgumentException | IllegalAccessException e) {
+				throw new SliceConstructionException(e.getMessage());
 			}
 		}
 	}
 	
+	/**
+	 * Creates a slice of the same type holding the same category collections.
+	 * The collections themselves are shared, use detachEntry before changing one of them.
+	 * @return
+	 */
+	public Slice<T> copy() {
+		Slice<T> copy = new Slice<T>(tClass);
+		copy.sliceMap.putAll(sliceMap);
+		return copy;
+	}
+	
+	Class<T> getType() {
+		return tClass;
+	}
+	
 	// sliceMap operations
 	
 	public int getWidth() {
@@ -86,15 +109,96 @@ public class Slice<T> implements Comparable<Slice<T>> {
 		thisObjects.addAll(objects);
 	}
 	
+	/**
+	 * Replaces the category's collection with a private copy of it, so that later unions
+	 * into this slice do not write through to other slices sharing the same collection.
+	 * BitmapSets and IntervalSets keep their kind, Lists become ArrayLists and anything else becomes a HashSet.
+	 * @param category
+	 */
+	public void detachEntry(String category) {
+		Collection<?> objects = this.getEntry(category);
+		if(objects instanceof BitmapSet) {
+			this.addEntry(category, new BitmapSet((BitmapSet) objects));
+		} else if(objects instanceof IntervalSet) {
+			this.addEntry(category, new IntervalSet((IntervalSet) objects));
+		} else if(objects instanceof List) {
+			this.addEntry(category, new ArrayList<>(objects));
+		} else {
+			this.addEntry(category, new HashSet<>(objects));
+		}
+	}
+	
 	public Map<String, Collection<?>> getMap() {
 		return sliceMap;
 	}
 	
+	/**
+	 * Replaces every Set category's collection with a BitmapSet interned against the given dictionary.
+	 * Once all the slices of a reduction are encoded with the same dictionary, containedIn,
+	 * asymetricDifference and unionAdd between them become word wide bitmap operations.
+	 * Categories held in Lists (or any other non Set collection) are left as they are, so that
+	 * toType() can still assign them to their fields, and so are the already compact IntervalSets.
+	 * @param dictionary
+	 * @return this slice
+	 */
+	public Slice<T> encode(SliceDictionary dictionary) {
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			if(entry.getValue() instanceof Set && !(entry.getValue() instanceof IntervalSet)) {
+				entry.setValue(dictionary.encode(entry.getKey(), entry.getValue()));
+			}
+		}
+		return this;
+	}
+	
+	/**
+	 * Replaces the given categories' collections with IntervalSets holding the same values, for
+	 * ordered dimensions (Integers or Longs) that would take too many values to enumerate.
+	 * Unions and containment checks between slices encoded this way work on the intervals.
+	 * @param categories
+	 * @return this slice
+	 * @throws ClassCastException if a category holds values other than all Integers or all Longs
+	 */
+	public Slice<T> encodeIntervals(String... categories) {
+		for(String category : categories) {
+			this.addEntry(category, IntervalSet.copyOf(this.getEntry(category)));
+		}
+		return this;
+	}
+
+	/**
+	 * Replaces every BitmapSet category with a plain HashSet holding the same values,
+	 * for types whose fields should not keep a reference to the dictionary
+	 * @return this slice
+	 */
+	public Slice<T> decode() {
+		for(Map.Entry<String, Collection<?>> entry : sliceMap.entrySet()) {
+			if(entry.getValue() instanceof BitmapSet) {
+				entry.setValue(new HashSet<>(entry.getValue()));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * The number of points covered, the product of the collection sizes.
+	 * Recomputed on every call, since the collections can change; ImmutableSlice caches it.
+	 * @return
+	 */
 	public long volume() {
-		return this.getMap().values()
-				.stream()
-				.map(c -> (long)c.size())
-				.reduce(1l, Math::multiplyExact);
+		long volume = 1;
+		for(Collection<?> objects : sliceMap.values()) {
+			volume = Math.multiplyExact(volume, sizeOf(objects));
+		}
+		return volume;
+	}
+	
+	/**
+	 * The size of the collection, without saturating at Integer.MAX_VALUE for IntervalSets
+	 * @param objects
+	 * @return
+	 */
+	public static long sizeOf(Collection<?> objects) {
+		return (objects instanceof IntervalSet) ? ((IntervalSet) objects).longSize() : objects.size();
 	}
 	
 	public String toString() {
@@ -156,8 +260,8 @@ public class Slice<T> implements Comparable<Slice<T>> {
 		return map;
 	}
 	
-	// Reflection utility methods
+	// Conversion back to T
 	public T toType() throws ObjectConstructionException {
-		return ReflectionUtils.createObjectWithFields(tClass, sliceMap);
+		return SliceCodecs.forClass(tClass).fromSlice(this);
 	}
 }
@@ -0,0 +1,43 @@
+package com.scucos.maven.Reducer;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Holds one ValueDictionary per category so that every slice encoded against it
+ * shares the same value ids, which is what lets two BitmapSets of the same category
+ * be compared and merged word by word.
+ * A single SliceDictionary should be used for all the slices taking part in a reduction.
+ */
+public class SliceDictionary {
+
+	private final Map<Object, ValueDictionary> dictionaries = new ConcurrentHashMap<>();
+
+	/**
+	 * Returns the dictionary for the given category, creating it if needed
+	 * @param category
+	 * @return
+	 */
+	public ValueDictionary forCategory(Object category) {
+		return dictionaries.computeIfAbsent(category, c -> new ValueDictionary());
+	}
+
+	/**
+	 * Copies the given objects into a BitmapSet backed by the category's dictionary.
+	 * Objects that are already a BitmapSet of that dictionary are copied bitwise.
+	 * @param category
+	 * @param objects
+	 * @return
+	 */
+	public BitmapSet encode(Object category, Collection<?> objects) {
+		ValueDictionary dictionary = forCategory(category);
+		if(objects instanceof BitmapSet && ((BitmapSet) objects).getDictionary() == dictionary) {
+			return new BitmapSet((BitmapSet) objects);
+		}
+
+		BitmapSet encoded = new BitmapSet(dictionary);
+		encoded.addAll(objects);
+		return encoded;
+	}
+}
@@ -0,0 +1,214 @@
+package com.scucos.maven.Reducer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Read-optimised index answering which of a set of (reduced) slices contain a given point.
+ *
+ * The slices are numbered 0..n-1 and, for every category, each value maps to the ids of the
+ * slices holding it. Values held by many slices keep their ids as a bitmap, the rest as a sorted
+ * int array, so the index stays O(total values) in size. A lookup takes the posting of every
+ * queried (category, value) pair and intersects them, starting from the smallest one.
+ * Partial points (values for only some of the categories) return every slice matching them.
+ *
+ * The index copies the slices it is built from and never changes afterwards, so any number of
+ * threads can query it concurrently. Returned slices belong to the index and must not be modified.
+ *
+ * Runtime complexity:
+ * Let k be the number of queried categories and m the size of the smallest of their postings.
+ * A lookup is O(k) hash lookups plus O(m * k) membership checks (O(1) against bitmaps,
+ * O(log n) against sorted arrays). Building is O(total number of values across all slices).
+ *
+ * @param <T>
+ */
+public class SliceIndex<T> {
+
+	private final List<Slice<T>> slices;
+
+	private final Map<String, Map<Object, Posting>> postings;
+
+	public SliceIndex(Collection<Slice<T>> slices) {
+		List<Slice<T>> copies = new ArrayList<>(slices.size());
+		Map<String, Map<Object, IdsBuilder>> builders = new HashMap<>();
+
+		for(Slice<T> slice : slices) {
+			int id = copies.size();
+			Slice<T> copy = slice.copy();
+			for(String category : slice.getCategories()) {
+				copy.detachEntry(category);
+
+				Map<Object, IdsBuilder> categoryBuilders = builders.computeIfAbsent(category, c -> new HashMap<>());
+				for(Object value : copy.getEntry(category)) {
+					categoryBuilders.computeIfAbsent(value, v -> new IdsBuilder()).add(id);
+				}
+			}
+			copies.add(copy);
+		}
+
+		Map<String, Map<Object, Posting>> built = new HashMap<>();
+		for(Map.Entry<String, Map<Object, IdsBuilder>> category : builders.entrySet()) {
+			Map<Object, Posting> categoryPostings = new HashMap<>();
+			for(Map.Entry<Object, IdsBuilder> value : category.getValue().entrySet()) {
+				categoryPostings.put(value.getKey(), value.getValue().build(copies.size()));
+			}
+			built.put(category.getKey(), categoryPostings);
+		}
+
+		this.slices = Collections.unmodifiableList(copies);
+		this.postings = built;
+	}
+
+	/**
+	 * Finds the slice containing the point, for non overlapping slices there is at most one
+	 * @param point a value for every category
+	 * @return the containing slice, or null if no slice contains the point
+	 */
+	public Slice<T> find(Map<String, ?> point) {
+		List<Slice<T>> found = search(point, 1);
+		return found.isEmpty() ? null : found.get(0);
+	}
+
+	/**
+	 * Finds every slice holding all of the given values
+	 * @param partialPoint a value for some (or all) of the categories
+	 * @return the matching slices in index order, all of them for an empty point
+	 */
+	public List<Slice<T>> findAll(Map<String, ?> partialPoint) {
+		return search(partialPoint, Integer.MAX_VALUE);
+	}
+
+	/**
+	 * All the indexed slices, slice ids are positions in this list
+	 * @return
+	 */
+	public List<Slice<T>> getSlices() {
+		return slices;
+	}
+
+	public int size() {
+		return slices.size();
+	}
+
+	private List<Slice<T>> search(Map<String, ?> point, int limit) {
+		if(point.isEmpty()) {
+			return slices.subList(0, Math.min(limit, slices.size()));
+		}
+
+		Posting[] matching = new Posting[point.size()];
+		int i = 0;
+		for(Map.Entry<String, ?> entry : point.entrySet()) {
+			Map<Object, Posting> categoryPostings = postings.get(entry.getKey());
+			Posting posting = (categoryPostings == null) ? null : categoryPostings.get(entry.getValue());
+			if(posting == null) {
+				return Collections.emptyList();
+			}
+			matching[i++] = posting;
+		}
+		Arrays.sort(matching, Comparator.comparingInt(Posting::size));
+
+		List<Slice<T>> found = new ArrayList<>();
+		Posting smallest = matching[0];
+		for(int id = smallest.next(0); id >= 0 && found.size() < limit; id = smallest.next(id + 1)) {
+			boolean inAll = true;
+			for(int p = 1; p < matching.length && inAll; p++) {
+				inAll = matching[p].contains(id);
+			}
+			if(inAll) {
+				found.add(slices.get(id));
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * The immutable ids of the slices holding one value, as a bitmap or a sorted array
+	 */
+	private static class Posting {
+		private final long[] bits;
+		private final int[] ids;
+		private final int size;
+
+		Posting(long[] bits, int[] ids, int size) {
+			this.bits = bits;
+			this.ids = ids;
+			this.size = size;
+		}
+
+		int size() {
+			return size;
+		}
+
+		boolean contains(int id) {
+			if(bits != null) {
+				int word = id >>> 6;
+				return word < bits.length && (bits[word] & (1L << id)) != 0;
+			}
+			return Arrays.binarySearch(ids, id) >= 0;
+		}
+
+		/**
+		 * The smallest id >= from, or -1
+		 */
+		int next(int from) {
+			if(bits != null) {
+				int word = from >>> 6;
+				if(word >= bits.length) {
+					return -1;
+				}
+				long current = bits[word] & (-1L << from);
+				while(current == 0) {
+					if(++word == bits.length) {
+						return -1;
+					}
+					current = bits[word];
+				}
+				return (word << 6) + Long.numberOfTrailingZeros(current);
+			}
+
+			int index = Arrays.binarySearch(ids, from);
+			if(index < 0) {
+				index = -index - 1;
+			}
+			return index < ids.length ? ids[index] : -1;
+		}
+	}
+
+	/**
+	 * Collects ids in increasing order while the index is built
+	 */
+	private static class IdsBuilder {
+		private int[] ids = new int[4];
+		private int size = 0;
+
+		void add(int id) {
+			if(size > 0 && ids[size - 1] == id) {
+				return;
+			}
+			if(size == ids.length) {
+				ids = Arrays.copyOf(ids, size * 2);
+			}
+			ids[size++] = id;
+		}
+
+		/**
+		 * Values held by more than 1 in 32 slices are cheaper to store as a bitmap
+		 */
+		Posting build(int sliceCount) {
+			if(size * 32L >= sliceCount) {
+				long[] bits = new long[(sliceCount + 63) >>> 6];
+				for(int i = 0; i < size; i++) {
+					bits[ids[i] >>> 6] |= 1L << ids[i];
+				}
+				return new Posting(bits, null, size);
+			}
+			return new Posting(null, Arrays.copyOf(ids, size), size);
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package com.scucos.maven.Reducer;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Lazy enumeration of the points covered by slices, without ever holding more than one of them.
+ *
+ * Every point is an immutable Map from category to value, the same shape SliceIndex.find takes.
+ * The points of a set of slices are numbered 0..count-1: slice after slice in the collection's
+ * iteration order, and within a slice as an odometer over its categories sorted by name, the
+ * last category turning fastest. A spliterator covers a range of those numbers, so splitting one
+ * for a parallel stream just halves the range, and starting at an offset only has to find the
+ * slice the offset falls in. Pass a List (or a LinkedHashSet) when offsets have to mean the same
+ * points from one run to the next.
+ *
+ * The values of every slice are copied into arrays when the spliterator is created (IntervalSets
+ * are copied as intervals), so the slices can change afterwards without affecting it.
+ *
+ * say we stream out the points of a reduction, skipping the 1000000 already loaded
+ * SlicePoints.stream(new ArrayList<>(reduced), 1000000).forEach(loader::add);
+ *
+ * Runtime complexity:
+ * Creating a spliterator is O(total number of values across all slices). Each point then costs
+ * O(d) for d categories (O(d log k) for IntervalSets of k intervals), starting at an offset
+ * costs O(log n + d) for n slices and trySplit is O(1).
+ */
+public final class SlicePoints {
+
+	private SlicePoints() {
+
+	}
+
+	/**
+	 * The number of points the slices cover, counting points covered by several slices once per slice
+	 * @param slices
+	 * @return
+	 * @throws ArithmeticException if there are more than Long.MAX_VALUE points
+	 */
+	public static <T> long count(Collection<Slice<T>> slices) {
+		long count = 0;
+		for(Slice<T> slice : slices) {
+			count = Math.addExact(count, slice.volume());
+		}
+		return count;
+	}
+
+	public static <T> Spliterator<Map<String, Object>> spliterator(Slice<T> slice) {
+		return spliterator(Collections.singletonList(slice), 0);
+	}
+
+	public static <T> Spliterator<Map<String, Object>> spliterator(Collection<Slice<T>> slices) {
+		return spliterator(slices, 0);
+	}
+
+	/**
+	 * @param slices
+	 * @param offset the number of points to skip, skipping all of them (or more) leaves nothing to enumerate
+	 * @return a spliterator over the points from offset on
+	 * @throws ArithmeticException if there are more than Long.MAX_VALUE points
+	 */
+	public static <T> Spliterator<Map<String, Object>> spliterator(Collection<Slice<T>> slices, long offset) {
+		if(offset < 0) {
+			throw new IllegalArgumentException("Negative offset " + offset);
+		}
+		FrozenSlice[] frozen = new FrozenSlice[slices.size()];
+		long[] starts = new long[frozen.length + 1];
+		int s = 0;
+		for(Slice<T> slice : slices) {
+			frozen[s] = new FrozenSlice(slice);
+			starts[s + 1] = Math.addExact(starts[s], frozen[s].volume);
+			s++;
+		}
+		long count = starts[frozen.length];
+		return new PointSpliterator(frozen, starts, Math.min(offset, count), count);
+	}
+
+	public static <T> Stream<Map<String, Object>> stream(Collection<Slice<T>> slices) {
+		return StreamSupport.stream(spliterator(slices), false);
+	}
+
+	public static <T> Stream<Map<String, Object>> stream(Collection<Slice<T>> slices, long offset) {
+		return StreamSupport.stream(spliterator(slices, offset), false);
+	}
+
+	public static <T> Stream<Map<String, Object>> parallelStream(Collection<Slice<T>> slices) {
+		return StreamSupport.stream(spliterator(slices), true);
+	}
+
+	/**
+	 * The points numbered index until fence, the frozen slices are shared with the spliterators split off
+	 */
+	private static final class PointSpliterator implements Spliterator<Map<String, Object>> {
+
+		private final FrozenSlice[] slices;
+		private final long[] starts;
+		private long index;
+		private final long fence;
+
+		// The position of index, found the first time a point is taken
+		private int slice = -1;
+		private long[] digits;
+
+		PointSpliterator(FrozenSlice[] slices, long[] starts, long index, long fence) {
+			this.slices = slices;
+			this.starts = starts;
+			this.index = index;
+			this.fence = fence;
+		}
+
+		@Override
+		public boolean tryAdvance(Consumer<? super Map<String, Object>> action) {
+			if(index >= fence) {
+				return false;
+			}
+			if(slice < 0) {
+				locate();
+			}
+			FrozenSlice current = slices[slice];
+			Object[] values = new Object[digits.length];
+			for(int k = 0; k < digits.length; k++) {
+				values[k] = current.axes[k].get(digits[k]);
+			}
+			index++;
+			if(index < fence) {
+				next();
+			}
+			action.accept(new Point(current.categories, values));
+			return true;
+		}
+
+		@Override
+		public Spliterator<Map<String, Object>> trySplit() {
+			long remaining = fence - index;
+			if(remaining < 2) {
+				return null;
+			}
+			long middle = index + remaining / 2;
+			PointSpliterator prefix = new PointSpliterator(slices, starts, index, middle);
+			index = middle;
+			slice = -1;
+			return prefix;
+		}
+
+		@Override
+		public long estimateSize() {
+			return fence - index;
+		}
+
+		@Override
+		public int characteristics() {
+			return ORDERED | SIZED | SUBSIZED | NONNULL | IMMUTABLE;
+		}
+
+		/**
+		 * Finds the slice holding point index, the one with starts[s] <= index < starts[s + 1], and the digits of the point in it
+		 */
+		private void locate() {
+			int s = Arrays.binarySearch(starts, index);
+			if(s < 0) {
+				s = -s - 2;
+			} else {
+				while(starts[s + 1] == index) { // Skip empty slices
+					s++;
+				}
+			}
+			slice = s;
+
+			Axis[] axes = slices[s].axes;
+			digits = new long[axes.length];
+			long local = index - starts[s];
+			for(int k = axes.length - 1; k >= 0; k--) {
+				digits[k] = local % axes[k].size;
+				local /= axes[k].size;
+			}
+		}
+
+		/**
+		 * Turns the odometer by one, moving on to the next non empty slice when this one is done
+		 */
+		private void next() {
+			Axis[] axes = slices[slice].axes;
+			for(int k = axes.length - 1; k >= 0; k--) {
+				if(++digits[k] < axes[k].size) {
+					return;
+				}
+				digits[k] = 0;
+			}
+			slice = -1;
+			locate();
+		}
+	}
+
+	/**
+	 * A copy of a slice's values, categories sorted by name
+	 */
+	private static final class FrozenSlice {
+		final String[] categories;
+		final Axis[] axes;
+		final long volume;
+
+		FrozenSlice(Slice<?> slice) {
+			categories = slice.getCategories().toArray(new String[0]);
+			Arrays.sort(categories);
+			axes = new Axis[categories.length];
+			long volume = 1;
+			for(int k = 0; k < categories.length; k++) {
+				Collection<?> objects = slice.getEntry(categories[k]);
+				axes[k] = (objects instanceof IntervalSet) ? new IntervalAxis(new IntervalSet((IntervalSet) objects)) : new ArrayAxis(objects.toArray());
+				volume = Math.multiplyExact(volume, axes[k].size);
+			}
+			this.volume = volume;
+		}
+	}
+
+	/**
+	 * The values of one category, by position
+	 */
+	private static abstract class Axis {
+		final long size;
+
+		Axis(long size) {
+			this.size = size;
+		}
+
+		abstract Object get(long position);
+	}
+
+	private static final class ArrayAxis extends Axis {
+		private final Object[] values;
+
+		ArrayAxis(Object[] values) {
+			super(values.length);
+			this.values = values;
+		}
+
+		@Override
+		Object get(long position) {
+			return values[(int) position];
+		}
+	}
+
+	/**
+	 * Positions in an IntervalSet, without expanding its intervals
+	 */
+	private static final class IntervalAxis extends Axis {
+		private final IntervalSet set;
+		private final long[] firsts; // The position of every interval's lower bound
+
+		IntervalAxis(IntervalSet set) {
+			super(set.longSize());
+			this.set = set;
+			this.firsts = new long[set.intervalCount()];
+			for(int i = 1; i < firsts.length; i++) {
+				firsts[i] = firsts[i - 1] + (set.upperBound(i - 1) - set.lowerBound(i - 1) + 1);
+			}
+		}
+
+		@Override
+		Object get(long position) {
+			int i = Arrays.binarySearch(firsts, position);
+			if(i < 0) {
+				i = -i - 2;
+			}
+			long value = set.lowerBound(i) + (position - firsts[i]);
+			return set.holdsLongs() ? (Object) Long.valueOf(value) : (Object) Integer.valueOf((int) value);
+		}
+	}
+
+	/**
+	 * An immutable point sharing its slice's category names, equal to any Map with the same entries
+	 */
+	private static final class Point extends AbstractMap<String, Object> {
+		private final String[] categories;
+		private final Object[] values;
+
+		Point(String[] categories, Object[] values) {
+			this.categories = categories;
+			this.values = values;
+		}
+
+		@Override
+		public int size() {
+			return categories.length;
+		}
+
+		@Override
+		public boolean containsKey(Object key) {
+			return indexOf(key) >= 0;
+		}
+
+		@Override
+		public Object get(Object key) {
+			int k = indexOf(key);
+			return (k < 0) ? null : values[k];
+		}
+
+		@Override
+		public Set<Map.Entry<String, Object>> entrySet() {
+			return new AbstractSet<Map.Entry<String, Object>>() {
+				@Override
+				public int size() {
+					return categories.length;
+				}
+
+				@Override
+				public Iterator<Map.Entry<String, Object>> iterator() {
+					return new Iterator<Map.Entry<String, Object>>() {
+						private int k = 0;
+
+						@Override
+						public boolean hasNext() {
+							return k < categories.length;
+						}
+
+						@Override
+						public Map.Entry<String, Object> next() {
+							if(k >= categories.length) {
+								throw new NoSuchElementException();
+							}
+							Map.Entry<String, Object> entry = new AbstractMap.SimpleImmutableEntry<>(categories[k], values[k]);
+							k++;
+							return entry;
+						}
+					};
+				}
+			};
+		}
+
+		private int indexOf(Object key) {
+			for(int k = 0; k < categories.length; k++) {
+				if(categories[k].equals(key)) {
+					return k;
+				}
+			}
+			return -1;
+		}
+	}
+}
@@ -0,0 +1,86 @@
+package com.scucos.maven.Reducer;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Interns the values of a single category into dense int ids (0, 1, 2, ...).
+ * Ids are handed out in first-seen order and are never reused, so an id stays
+ * valid for the lifetime of the dictionary. Lookups are lock free, interning a
+ * new value takes the dictionary's lock.
+ */
+public class ValueDictionary {
+
+	// ConcurrentHashMap does not accept null keys, so null values are interned under this marker
+	private static final Object NULL = new Object();
+
+	private final Map<Object, Integer> ids = new ConcurrentHashMap<>();
+
+	private volatile Object[] values = new Object[16];
+
+	private volatile int size = 0;
+
+	/**
+	 * Returns the id of the given value, assigning a new one if the value has not been seen before
+	 * @param value
+	 * @return
+	 */
+	public int intern(Object value) {
+		value = (value == null) ? NULL : value;
+		Integer id = ids.get(value);
+		if(id != null) {
+			return id;
+		}
+
+		synchronized(this) {
+			id = ids.get(value);
+			if(id != null) {
+				return id;
+			}
+
+			int next = size;
+			Object[] current = values;
+			if(next == current.length) {
+				current = Arrays.copyOf(current, current.length * 2);
+			}
+			current[next] = value;
+			values = current;
+			size = next + 1;
+			ids.put(value, next);
+
+			return next;
+		}
+	}
+
+	/**
+	 * Returns the id of the given value, or -1 if the value was never interned
+	 * @param value
+	 * @return
+	 */
+	public int idOf(Object value) {
+		Integer id = ids.get(value == null ? NULL : value);
+		return id == null ? -1 : id;
+	}
+
+	/**
+	 * Returns the value that was interned under the given id
+	 * @param id
+	 * @return
+	 */
+	public Object valueOf(int id) {
+		if(id < 0 || id >= size) {
+			throw new IndexOutOfBoundsException("No value interned under id " + id);
+		}
+		Object value = values[id];
+		return value == NULL ? null : value;
+	}
+
+	/**
+	 * The number of distinct values interned so far
+	 * @return
+	 */
+	public int size() {
+		return size;
+	}
+}
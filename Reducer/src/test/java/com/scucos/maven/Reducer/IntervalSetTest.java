@@ -0,0 +1,176 @@
+package com.scucos.maven.Reducer;
+
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Random;
+import java.util.Set;
+
+import junit.framework.TestCase;
+
+/**
+ * Random operations on IntervalSets checked against a HashSet holding the same values, including
+ * the closed form hashCode, which has to agree with Set.hashCode.
+ */
+public class IntervalSetTest extends TestCase {
+
+	private static final int ROUNDS = 2000;
+	private static final int OPERATIONS = 20;
+	private static final int SPAN = 60;
+
+	public void testRandomIntegerOperations() {
+		randomOperations(false, new long[] { 0, -30, Integer.MIN_VALUE, Integer.MAX_VALUE - SPAN + 1 });
+	}
+
+	public void testRandomLongOperations() {
+		randomOperations(true, new long[] { 0, -30, (1L << 32) - 30, Long.MIN_VALUE, Long.MAX_VALUE - SPAN + 1 });
+	}
+
+	public void testHashOfRangesCrossingBlocks() {
+		long[][] ranges = {
+				{ -5, 5 },
+				{ -1000000, 1000000 },
+				{ (1L << 32) - 1000000, (1L << 32) + 1000000 },
+				{ -(1L << 32) - 1000000, -(1L << 32) + 1000000 },
+				{ Long.MAX_VALUE - 1000000, Long.MAX_VALUE },
+				{ Long.MIN_VALUE, Long.MIN_VALUE + 1000000 },
+		};
+		for(long[] range : ranges) {
+			IntervalSet set = IntervalSet.ofLongs();
+			set.addRange(range[0], range[1]);
+			int hash = 0;
+			for(long value = range[0]; ; value++) {
+				hash += Long.hashCode(value);
+				if(value == range[1]) {
+					break;
+				}
+			}
+			assertEquals("hash of " + set, hash, set.hashCode());
+		}
+
+		IntervalSet integers = IntervalSet.ofIntegers();
+		integers.addRange(Integer.MIN_VALUE, Integer.MIN_VALUE + 1000000);
+		integers.addRange(Integer.MAX_VALUE - 1000000, Integer.MAX_VALUE);
+		assertEquals(new HashSet<>(integers).hashCode(), integers.hashCode());
+	}
+
+	/**
+	 * Ranges too long to enumerate, the hash of a range has to be the sum of the hashes of its parts
+	 */
+	public void testHashOfLongRangesIsAdditive() {
+		Random random = new Random(11);
+		for(int i = 0; i < 1000; i++) {
+			long from = random.nextLong();
+			long to = random.nextLong();
+			if(from > to) {
+				long swap = from;
+				from = to;
+				to = swap;
+			}
+			long split = from + (long) (random.nextDouble() * (to - from));
+			if(split < from || split >= to) {
+				continue;
+			}
+
+			IntervalSet whole = IntervalSet.ofLongs();
+			whole.addRange(from, to);
+			IntervalSet parts = IntervalSet.ofLongs();
+			parts.addRange(split + 1, to);
+			parts.addRange(from, split);
+			IntervalSet left = IntervalSet.ofLongs();
+			left.addRange(from, split);
+			IntervalSet right = IntervalSet.ofLongs();
+			right.addRange(split + 1, to);
+
+			assertEquals(1, parts.intervalCount());
+			assertEquals(whole, parts);
+			assertEquals(whole.hashCode(), parts.hashCode());
+			assertEquals(whole.hashCode(), left.hashCode() + right.hashCode());
+		}
+	}
+
+	private void randomOperations(boolean longs, long[] bases) {
+		Random random = new Random(7);
+		for(int round = 0; round < ROUNDS; round++) {
+			long base = bases[random.nextInt(bases.length)];
+			IntervalSet set = longs ? IntervalSet.ofLongs() : IntervalSet.ofIntegers();
+			Set<Object> expected = new HashSet<>();
+
+			for(int operation = 0; operation < OPERATIONS; operation++) {
+				int offset = random.nextInt(SPAN);
+				long from = base + offset;
+				long to = base + Math.min(SPAN - 1, offset + random.nextInt(10));
+				Set<Object> range = new HashSet<>();
+				for(long value = from; value - from <= to - from; value++) { // to can be Long.MAX_VALUE
+					range.add(box(longs, value));
+				}
+
+				switch(random.nextInt(7)) {
+				case 0:
+					assertEquals(expected.addAll(range), set.addRange(from, to));
+					break;
+				case 1:
+					assertEquals(expected.removeAll(range), set.removeRange(from, to));
+					break;
+				case 2:
+					assertEquals(expected.add(box(longs, from)), set.add(box(longs, from)));
+					break;
+				case 3:
+					assertEquals(expected.remove(box(longs, from)), set.remove(box(longs, from)));
+					break;
+				case 4: {
+					IntervalSet other = IntervalSet.copyOf(range);
+					assertEquals(expected.containsAll(range), set.containsAll(other));
+					if(random.nextBoolean()) {
+						assertEquals(expected.addAll(range), set.addAll(other));
+					} else {
+						assertEquals(expected.removeAll(range), set.removeAll(other));
+					}
+					break;
+				}
+				case 5: {
+					Iterator<Object> iterator = set.iterator();
+					while(iterator.hasNext()) {
+						Object value = iterator.next();
+						if(random.nextInt(5) == 0) {
+							iterator.remove();
+							expected.remove(value);
+						}
+					}
+					break;
+				}
+				default: {
+					Set<Object> some = new HashSet<>();
+					for(Object value : range) {
+						if(random.nextBoolean()) {
+							some.add(value);
+						}
+					}
+					assertEquals(expected.addAll(some), set.addAll(some));
+					break;
+				}
+				}
+
+				assertSame(expected, set);
+			}
+		}
+	}
+
+	private static void assertSame(Set<Object> expected, IntervalSet set) {
+		assertEquals(expected.size(), set.size());
+		assertTrue(set.equals(expected));
+		assertTrue(expected.equals(set));
+		assertEquals(expected.hashCode(), set.hashCode());
+		assertEquals(expected, new HashSet<>(set));
+
+		IntervalSet copy = IntervalSet.copyOf(expected);
+		assertEquals(copy, set);
+		assertEquals(copy.intervalCount(), set.intervalCount());
+		for(int i = 1; i < set.intervalCount(); i++) {
+			assertTrue("intervals " + set + " are not coalesced", set.lowerBound(i) > set.upperBound(i - 1) + 1);
+		}
+	}
+
+	private static Object box(boolean longs, long value) {
+		return longs ? (Object) Long.valueOf(value) : (Object) Integer.valueOf((int) value);
+	}
+}
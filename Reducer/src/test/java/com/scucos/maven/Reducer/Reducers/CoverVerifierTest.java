@@ -0,0 +1,117 @@
+package com.scucos.maven.Reducer.Reducers;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import com.scucos.maven.Reducer.Main.Region;
+import com.scucos.maven.Reducer.Slice;
+
+import junit.framework.TestCase;
+
+/**
+ * CoverVerifier on a reduction of a few hundred regions, with the output broken in one way at a time
+ */
+public class CoverVerifierTest extends TestCase {
+
+	private final Reducer<Region> reducer = new NewRecursiveReducer<Region>() {};
+	private final CoverVerifier<Region> verifier = new CoverVerifier<Region>();
+
+	private Set<Region> regions;
+	private List<Slice<Region>> inputs;
+	private List<Slice<Region>> outputs;
+
+	@Override
+	protected void setUp() {
+		Random random = new Random(3);
+		regions = new HashSet<>();
+		for(int country = 0; country < 3; country++) {
+			for(int city = 0; city < 12; city++) {
+				for(int population = 0; population < 12; population++) {
+					if(random.nextInt(5) != 0) {
+						regions.add(new Region("country" + country, "city" + city, population));
+					}
+				}
+			}
+		}
+		inputs = slices();
+		outputs = new ArrayList<>(reducer.reduceSlices(new HashSet<>(slices())));
+		Collections.sort(outputs, (a, b) -> Long.compare(b.volume(), a.volume()));
+	}
+
+	public void testExactReduction() {
+		CoverReport<Region> report = verifier.verify(reducer, regions);
+
+		assertTrue(report.toString(), report.isExact());
+		assertEquals(regions.size(), report.getInputVolume());
+		assertEquals(regions.size(), report.getOutputVolume());
+		assertCounts(report, 0, 0, 0);
+	}
+
+	public void testMissingPoints() {
+		Slice<Region> dropped = outputs.remove(0);
+
+		CoverReport<Region> report = verifier.verify(inputs, outputs);
+
+		assertFalse(report.isExact());
+		assertTrue(dropped.volume() > 1);
+		assertEquals(regions.size() - dropped.volume(), report.getOutputVolume());
+		assertCounts(report, 0, dropped.volume(), 0);
+		assertFalse(report.getMissingExamples().isEmpty());
+	}
+
+	public void testExtraPoints() {
+		Slice<Region> widened = outputs.get(0).copy();
+		widened.detachEntry("cities");
+		widened.addObjects("cities", Collections.singleton("nowhere"));
+		long added = widened.volume() - outputs.get(0).volume();
+		outputs.set(0, widened);
+
+		CoverReport<Region> report = verifier.verify(inputs, outputs);
+
+		assertFalse(report.isExact());
+		assertTrue(added > 0);
+		assertEquals(regions.size() + added, report.getOutputVolume());
+		assertCounts(report, 0, 0, added);
+		assertEquals(Collections.singletonList(widened), report.getExtraExamples());
+	}
+
+	public void testOverlappingOutputs() {
+		outputs.add(outputs.get(0).copy());
+
+		CoverReport<Region> report = verifier.verify(inputs, outputs);
+
+		assertFalse(report.isExact());
+		assertCounts(report, 1, 0, 0);
+		assertEquals(1, report.getOverlapExamples().size());
+	}
+
+	public void testSelfOverlappingInput() {
+		// The largest output slice overlaps the single region inputs it was reduced from
+		inputs.add(outputs.get(0).copy());
+
+		CoverReport<Region> report = verifier.verify(inputs, outputs);
+
+		assertTrue(report.toString(), report.isExact());
+		assertEquals(regions.size() + outputs.get(0).volume(), report.getInputVolume());
+		assertEquals(regions.size(), report.getOutputVolume());
+		assertCounts(report, 0, 0, 0);
+	}
+
+	private List<Slice<Region>> slices() {
+		return regions
+				.stream()
+				.map(region -> reducer.toSlice(region))
+				.collect(Collectors.toList());
+	}
+
+	private static void assertCounts(CoverReport<Region> report, long overlappingPairs, long missingPoints, long extraPoints) {
+		assertEquals(overlappingPairs, report.getOverlappingPairs());
+		assertEquals(missingPoints, report.getMissingPoints());
+		assertEquals(extraPoints, report.getExtraPoints());
+	}
+}